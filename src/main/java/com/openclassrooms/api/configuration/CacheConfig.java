@@ -0,0 +1,155 @@
+package com.openclassrooms.api.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.service.json.RentalJsonCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for in-process caches.
+ * Caches are bounded Caffeine caches recording statistics,
+ * published as cache.gets / cache.evictions / cache.size metrics by Actuator.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Cache of RentalResponse by Rental ID
+     */
+    public static final String RENTALS_CACHE = "rentals";
+
+    /**
+     * Cache of serialized RentalResponse by Rental ID
+     */
+    public static final String RENTALS_JSON_CACHE = "rentals-json";
+
+    /**
+     * Cache of immutable User snapshots by email
+     */
+    public static final String USERS_CACHE = "users";
+
+    /**
+     * Approximate size of a cached entry, without its strings
+     */
+    private static final int ENTRY_BASE_WEIGHT = 256;
+
+    /**
+     * New CacheManager instance
+     *
+     * @param rentalsMaxWeight approximate max memory used by rentals cache, in bytes
+     * @param rentalsTtl time to live of rentals cache entries
+     * @param rentalsJsonMaxWeight approximate max memory used by rentals JSON cache, in bytes
+     * @param usersMaxSize max number of cached users
+     * @param usersTtl time to live of users cache entries
+     * @param usersNegativeTtl time to live of unknown emails in users cache
+     * @return CacheManager
+     */
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${app.cache.rentals.max-weight}") long rentalsMaxWeight,
+            @Value("${app.cache.rentals.ttl}") String rentalsTtl,
+            @Value("${app.cache.rentals-json.max-weight}") long rentalsJsonMaxWeight,
+            @Value("${app.cache.users.max-size}") long usersMaxSize,
+            @Value("${app.cache.users.ttl}") String usersTtl,
+            @Value("${app.cache.users.negative-ttl}") String usersNegativeTtl
+    ) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+
+        cacheManager.registerCustomCache(RENTALS_CACHE, Caffeine.newBuilder()
+                .maximumWeight(rentalsMaxWeight)
+                .weigher((Object id, Object rental) -> weight(rental))
+                .expireAfterWrite(DurationStyle.detectAndParse(rentalsTtl))
+                .recordStats()
+                .build());
+
+        cacheManager.registerCustomCache(RENTALS_JSON_CACHE, Caffeine.newBuilder()
+                .maximumWeight(rentalsJsonMaxWeight)
+                .weigher((Object id, Object json) -> weight(json))
+                .expireAfterWrite(DurationStyle.detectAndParse(rentalsTtl))
+                .recordStats()
+                .build());
+
+        // Unknown emails are cached as null values, with a shorter time to live
+        cacheManager.registerCustomCache(USERS_CACHE, Caffeine.newBuilder()
+                .maximumSize(usersMaxSize)
+                .expireAfter(new NegativeEntryExpiry(
+                        DurationStyle.detectAndParse(usersTtl),
+                        DurationStyle.detectAndParse(usersNegativeTtl)
+                ))
+                .recordStats()
+                .build());
+
+        return cacheManager;
+    }
+
+    /**
+     * Approximate memory used by a cached rental, in bytes
+     *
+     * @param value cached value
+     * @return int
+     */
+    private static int weight(Object value) {
+        if (value instanceof RentalResponse rental) {
+            return ENTRY_BASE_WEIGHT + length(rental.name()) + length(rental.picture()) + length(rental.description());
+        }
+        if (value instanceof RentalJsonCache.Entry entry) {
+            return ENTRY_BASE_WEIGHT + entry.json().length;
+        }
+        return ENTRY_BASE_WEIGHT;
+    }
+
+    /**
+     * Length of a nullable String
+     *
+     * @param value String
+     * @return int
+     */
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Expire cached null values sooner than other values
+     */
+    private static class NegativeEntryExpiry implements Expiry<Object, Object> {
+        private final long ttl;
+        private final long negativeTtl;
+
+        /**
+         * Constructor for NegativeEntryExpiry class
+         *
+         * @param ttl time to live of values
+         * @param negativeTtl time to live of null values
+         */
+        NegativeEntryExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttl = ttl.toNanos();
+            this.negativeTtl = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return value instanceof NullValue ? negativeTtl : ttl;
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
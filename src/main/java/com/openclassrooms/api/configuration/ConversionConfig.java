@@ -1,6 +1,5 @@
 package com.openclassrooms.api.configuration;
 
-import com.openclassrooms.api.configuration.converter.RentalToRentalResponse;
 import com.openclassrooms.api.configuration.converter.UserToAuthMeResponse;
 import com.openclassrooms.api.configuration.converter.UserToUserResponse;
 import org.springframework.context.annotation.Bean;
@@ -30,7 +29,6 @@ public class ConversionConfig {
 
         converters.add(new UserToAuthMeResponse());
         converters.add(new UserToUserResponse());
-        converters.add(new RentalToRentalResponse());
 
         conversionService.setConverters(converters);
         return conversionService;
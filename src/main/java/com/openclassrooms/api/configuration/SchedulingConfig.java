@@ -0,0 +1,12 @@
+package com.openclassrooms.api.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration class for scheduled tasks
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,21 +1,25 @@
 package com.openclassrooms.api.configuration;
 
 import com.openclassrooms.api.configuration.jwt.JwtFilter;
+import com.openclassrooms.api.configuration.password.AdaptiveBCryptPasswordEncoder;
+import com.openclassrooms.api.configuration.ratelimit.AuthRateLimitFilter;
+import com.openclassrooms.api.model.entity.User;
 import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.UserService;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -30,52 +34,76 @@ import static org.springframework.security.web.util.matcher.AntPathRequestMatche
 @EnableWebSecurity
 public class SpringSecurityConfig {
     private final JwtFilter jwtFilter;
+    private final AuthRateLimitFilter authRateLimitFilter;
     private final UserRepository userRepository;
+    private final UserService userService;
+    private final int managementPort;
 
     /**
      * Constructor for SpringSecurityConfig class
      *
      * @param jwtFilter JwtFilter
+     * @param authRateLimitFilter AuthRateLimitFilter
      * @param userRepository UserRepository
+     * @param userService UserService
+     * @param managementPort port of actuator endpoints, -1 when they share the application port
      */
-    public SpringSecurityConfig(JwtFilter jwtFilter, UserRepository userRepository) {
+    public SpringSecurityConfig(
+            JwtFilter jwtFilter,
+            AuthRateLimitFilter authRateLimitFilter,
+            UserRepository userRepository,
+            UserService userService,
+            @Value("${management.server.port:-1}") int managementPort
+    ) {
         this.jwtFilter = jwtFilter;
+        this.authRateLimitFilter = authRateLimitFilter;
         this.userRepository = userRepository;
+        this.userService = userService;
+        this.managementPort = managementPort;
     }
 
     /**
      * New UserDetailsService instance
+     * Users, and unknown emails, are read from users cache : each login gets its own copy of the cached user.
+     * Usernames are looked up whatever their casing, like the database does.
      *
      * @return UserDetailsService
      */
     @Bean
     public UserDetailsService userDetailsService() {
-        return username -> userRepository.findByEmail(username)
+        return username -> userService.getUserByEmail(username)
+                .map(UserService.CachedUser::toUser)
                 .orElseThrow(
                         () -> new UsernameNotFoundException("User " + username + " not found"));
     }
 
     /**
-     * New PasswordEncoder instance
+     * New UserDetailsPasswordService instance
+     * Saves passwords hashed again after a successful login, when their BCrypt cost changed.
      *
-     * @return BCryptPasswordEncoder
+     * @return UserDetailsPasswordService
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public UserDetailsPasswordService userDetailsPasswordService() {
+        return (userDetails, newPassword) -> {
+            User user = (User) userDetails;
+            user.setPassword(newPassword);
+            log.info("Password of user " + user.getId() + " hashed again");
+            User saved = userRepository.saveAndFlush(user);
+            userService.evictUser(user.getEmail());
+            return saved;
+        };
     }
 
     /**
-     * New AuthenticationManager instance
+     * New PasswordEncoder instance
      *
-     * @param authConfig AuthenticationManager instance
-     * @return AuthenticationManager
-     * @throws Exception Exception
+     * @param strength BCrypt log rounds
+     * @return AdaptiveBCryptPasswordEncoder
      */
     @Bean
-    public AuthenticationManager authenticationManager(
-            AuthenticationConfiguration authConfig) throws Exception {
-        return authConfig.getAuthenticationManager();
+    public PasswordEncoder passwordEncoder(@Value("${app.password.bcrypt-strength}") int strength) {
+        return new AdaptiveBCryptPasswordEncoder(strength);
     }
 
     /**
@@ -95,15 +123,24 @@ public class SpringSecurityConfig {
         http.csrf(AbstractHttpConfigurer::disable);
 
         http.authorizeHttpRequests(requestMatcherRegistry -> requestMatcherRegistry
+                // Streamed responses are already authorized when the request first comes in
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                // Actuator endpoints are only served on management port, which is not exposed publicly
+                .requestMatchers(request -> managementPort > 0 && request.getLocalPort() == managementPort).permitAll()
                 // Do not authenticate these requests
                 .requestMatchers(
                         antMatcher(HttpMethod.POST, "/api/auth/login"),
                         antMatcher(HttpMethod.POST, "/api/auth/register"),
+                        antMatcher(HttpMethod.POST, "/api/auth/refresh"),
+                        antMatcher(HttpMethod.GET, "/api/auth/email-available"),
                         antMatcher(HttpMethod.GET, "/images/**"),
-                        antMatcher(HttpMethod.GET, "/doc/**")
+                        antMatcher(HttpMethod.GET, "/doc/**"),
+                        antMatcher(HttpMethod.GET, "/.well-known/jwks.json")
                 ).permitAll()
                 // Authenticate these requests
-                .requestMatchers(antMatcher("/api/**")).authenticated()
+                .requestMatchers(
+                        antMatcher("/api/**")
+                ).authenticated()
                 // Deny all other requests
                 .anyRequest().denyAll()
         );
@@ -118,6 +155,9 @@ public class SpringSecurityConfig {
                 )
         );
 
+        // Add a filter to rate limit login and register requests, ahead of tokens validation
+        http.addFilterBefore(authRateLimitFilter, UsernamePasswordAuthenticationFilter.class);
+
         // Add a filter to validate the tokens with every authenticated request
         http.addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
 
@@ -0,0 +1,32 @@
+package com.openclassrooms.api.configuration.jwt;
+
+import com.openclassrooms.api.model.entity.User;
+import org.springframework.security.core.Authentication;
+
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Authenticated user, read from the principal built by JwtFilter.
+ * Services attach the user by its ID, without loading it.
+ *
+ * @param id User ID
+ * @param email User email
+ */
+public record AuthenticatedUser(int id, String email) {
+
+    /**
+     * Authenticated user of a request principal
+     *
+     * @param principal Principal
+     * @return Optional AuthenticatedUser, empty if principal has no user ID
+     */
+    public static Optional<AuthenticatedUser> of(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User user
+                && user.getId() > 0) {
+            return Optional.of(new AuthenticatedUser(user.getId(), user.getEmail()));
+        }
+        return Optional.empty();
+    }
+}
@@ -1,6 +1,7 @@
 package com.openclassrooms.api.configuration.jwt;
 
 import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.service.TokenRevocationService;
 import io.micrometer.common.lang.NonNullApi;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -16,7 +17,7 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.regex.Matcher;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 /**
@@ -28,14 +29,19 @@ import java.util.regex.Pattern;
 @NonNullApi
 @Component
 public class JwtFilter extends OncePerRequestFilter {
+    private static final Pattern BEARER = Pattern.compile("^Bearer .+");
+
     private final JwtService jwtService;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * Constructor for JwtFilter class
      * @param jwtService JwtService
+     * @param tokenRevocationService TokenRevocationService
      */
-    public JwtFilter(JwtService jwtService) {
+    public JwtFilter(JwtService jwtService, TokenRevocationService tokenRevocationService) {
         this.jwtService = jwtService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     /**
@@ -61,16 +67,24 @@ public class JwtFilter extends OncePerRequestFilter {
             return;
         }
 
-        String token = getAccessToken(request);
+        // Token is verified and read in a single pass
+        Optional<JwtPrincipal> principal = jwtService.verifyAccessToken(getAccessToken(request));
 
         // If the token is invalid, continue the filter chain without updating authentication context
-        if (!jwtService.validateAccessToken(token)) {
+        if (principal.isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        // Revocation is checked in memory, on every request : verified tokens cache does not know revocations
+        if (tokenRevocationService.isRevoked(principal.get().tokenId(), principal.get().expiresAt())) {
+            log.error("Token " + principal.get().tokenId() + " is revoked");
             filterChain.doFilter(request, response);
             return;
         }
 
         // If the token valid, update the authentication context with the user details ID and email
-        setAuthenticationContext(token, request);
+        setAuthenticationContext(principal.get(), request);
         filterChain.doFilter(request, response);
     }
 
@@ -85,9 +99,7 @@ public class JwtFilter extends OncePerRequestFilter {
         if (ObjectUtils.isEmpty(header)) {
             return false;
         }
-        Pattern pattern = Pattern.compile("^Bearer .+");
-        Matcher matcher = pattern.matcher(header);
-        if (matcher.find()) {
+        if (BEARER.matcher(header).find()) {
             return true;
         }
         log.error("Invalid Authorization header : " + "\"" + header + "\"");
@@ -107,16 +119,17 @@ public class JwtFilter extends OncePerRequestFilter {
 
     /**
      *  Update the authentication context with the user details ID and email.
+     *  Token principal is kept as credentials, to revoke the token.
      *
-     * @param token Access Token
+     * @param principal JwtPrincipal
      * @param request HttpServletRequest
      */
-    private void setAuthenticationContext(String token, HttpServletRequest request) {
-        UserDetails userDetails = getUserDetails(token);
+    private void setAuthenticationContext(JwtPrincipal principal, HttpServletRequest request) {
+        UserDetails userDetails = getUserDetails(principal);
 
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                 userDetails,
-                null,
+                principal,
                 null
         );
 
@@ -126,19 +139,23 @@ public class JwtFilter extends OncePerRequestFilter {
     }
 
     /**
+     * Return user details of a token principal
+     * Profile is only set when token profile claims are fresh enough.
      *
-     * @param token Access Token
+     * @param principal JwtPrincipal
      * @return UserDetails
      */
-    private UserDetails getUserDetails(String token) {
-
-        String subject = jwtService.getSubject(token);
-
-        String[] jwtSubject = subject.split(",");
-        return User.builder()
-                .id(Integer.parseInt(jwtSubject[0]))
-                .email(jwtSubject[1])
-                .build();
+    private UserDetails getUserDetails(JwtPrincipal principal) {
+        User.UserBuilder user = User.builder()
+                .id(principal.id())
+                .email(principal.email());
+
+        if (jwtService.hasFreshProfile(principal)) {
+            user.name(principal.name())
+                    .createdAt(principal.createdAt())
+                    .updatedAt(principal.updatedAt());
+        }
+        return user.build();
     }
 
 }
\ No newline at end of file
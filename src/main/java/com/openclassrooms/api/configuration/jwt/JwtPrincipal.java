@@ -0,0 +1,36 @@
+package com.openclassrooms.api.configuration.jwt;
+
+import java.time.Instant;
+
+/**
+ * Principal read from a verified access token
+ *
+ * @param tokenId token ID, null for tokens issued before revocation support
+ * @param id User ID
+ * @param email User email
+ * @param name User name, null if token has no profile claims
+ * @param createdAt User creation date, null if token has no profile claims
+ * @param updatedAt User update date, null if token has no profile claims
+ * @param issuedAt token issue date
+ * @param expiresAt token expiration date
+ */
+public record JwtPrincipal(
+        String tokenId,
+        int id,
+        String email,
+        String name,
+        Instant createdAt,
+        Instant updatedAt,
+        Instant issuedAt,
+        Instant expiresAt
+) {
+
+    /**
+     * Check if token carries every profile claim
+     *
+     * @return boolean
+     */
+    public boolean hasProfile() {
+        return name != null && createdAt != null && updatedAt != null;
+    }
+}
@@ -1,23 +1,41 @@
 package com.openclassrooms.api.configuration.jwt;
 
 import com.openclassrooms.api.model.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.Jwks;
 import io.jsonwebtoken.security.SignatureException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ResourceUtils;
 
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Jwt service
@@ -25,65 +43,201 @@ import java.util.Date;
 @Slf4j
 @Service
 public class JwtService {
+    private static final String NAME_CLAIM = "name";
+    private static final String CREATED_AT_CLAIM = "created_at";
+    private static final String UPDATED_AT_CLAIM = "updated_at";
+
     private final Duration expireDuration;
+    private final Duration profileMaxAge;
     private final String issuer;
-    private final SecretKey secretKey;
+    private final Key signingKey;
+    private final String signingKeyId;
+    private final Map<String, ?> publicJwks;
+    private final JwtParser parser;
+    private final Cache<String, JwtPrincipal> verifiedTokens;
 
     /**
      * Constructor for JwtService class
      *
      * @param appJwtSecret String
      * @param appJwtSalt String
-     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
-     * @throws InvalidKeySpecException InvalidKeySpecException
+     * @param appJwtExpiration access token lifetime, in hours when no unit is given
+     * @param appJwtIssuer String
+     * @param appJwtCacheMaxSize max number of verified tokens kept
+     * @param appJwtProfileMaxAge max age of profile claims trusted as is
+     * @param appJwtKeystorePath PKCS12 keystore of EdDSA or EC signing keys, empty to sign with HMAC secret
+     * @param appJwtKeystorePassword keystore and keys password
+     * @param appJwtKeystoreActiveKey alias of the key signing new tokens
+     * @throws GeneralSecurityException if keys cannot be read
+     * @throws IOException if keystore cannot be read
      */
     public JwtService(
             @Value("${app.jwt.secret}") String appJwtSecret,
             @Value("${app.jwt.salt}") String appJwtSalt,
             @Value("${app.jwt.expiration}") String appJwtExpiration,
-            @Value("${app.jwt.issuer}") String appJwtIssuer
-    ) throws NoSuchAlgorithmException, InvalidKeySpecException {
-        this.secretKey = getKeyFromPassword(appJwtSecret, appJwtSalt);
-        this.expireDuration = Duration.of(Long.parseLong(appJwtExpiration), ChronoUnit.HOURS);
+            @Value("${app.jwt.issuer}") String appJwtIssuer,
+            @Value("${app.jwt.cache.max-size}") long appJwtCacheMaxSize,
+            @Value("${app.jwt.profile.max-age}") String appJwtProfileMaxAge,
+            @Value("${app.jwt.keystore.path}") String appJwtKeystorePath,
+            @Value("${app.jwt.keystore.password}") String appJwtKeystorePassword,
+            @Value("${app.jwt.keystore.active-key}") String appJwtKeystoreActiveKey
+    ) throws GeneralSecurityException, IOException {
+        this.expireDuration = DurationStyle.detectAndParse(appJwtExpiration, ChronoUnit.HOURS);
         this.issuer = appJwtIssuer;
+        this.profileMaxAge = DurationStyle.detectAndParse(appJwtProfileMaxAge);
+
+        JwtParserBuilder parserBuilder = Jwts.parser().requireIssuer(issuer);
+
+        if (appJwtKeystorePath.isBlank()) {
+            // Symmetric mode : every verifying node needs the secret
+            SecretKey secretKey = getKeyFromPassword(appJwtSecret, appJwtSalt);
+            this.signingKey = secretKey;
+            this.signingKeyId = null;
+            this.publicJwks = Map.of("keys", List.of());
+            parserBuilder.verifyWith(secretKey);
+        } else {
+            // Asymmetric mode : tokens are signed with the active private key,
+            // and verified with the public key named by their kid header
+            KeyStore keyStore = loadKeyStore(appJwtKeystorePath, appJwtKeystorePassword);
+            Map<String, PublicKey> publicKeys = publicKeys(keyStore);
+            this.signingKey = keyStore.getKey(appJwtKeystoreActiveKey, appJwtKeystorePassword.toCharArray());
+            if (!(signingKey instanceof PrivateKey)) {
+                throw new KeyStoreException("No private key " + appJwtKeystoreActiveKey + " in JWT keystore");
+            }
+            this.signingKeyId = appJwtKeystoreActiveKey;
+            List<Jwk<?>> jwks = new ArrayList<>();
+            publicKeys.forEach((keyId, publicKey) -> jwks.add(Jwks.builder()
+                    .key(publicKey)
+                    .id(keyId)
+                    .publicKeyUse("sig")
+                    .build()));
+            this.publicJwks = Map.of("keys", List.copyOf(jwks));
+            parserBuilder.keyLocator(new KeyIdLocator(publicKeys));
+        }
+
+        // Parser is immutable and thread-safe : built once
+        this.parser = parserBuilder.build();
+
+        // Each verified token is kept until its own expiration
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(appJwtCacheMaxSize)
+                .expireAfter(new TokenExpiry())
+                .build();
     }
 
     /**
      * Create a JSON Web Token
+     * Token carries the user profile, so it can be shown without reading the database.
      *
      * @param user User
      * @return Access Token
      */
     public String generateAccessToken(User user) {
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
+                // Token ID, to revoke it
+                .id(UUID.randomUUID().toString())
                 // Subject is combination of the user’s ID and email, separated by a comma
-                .subject(String.format("%s,%s", user.getId(), user.getEmail()))
+                .subject(String.format("%s,%s", user.getId(), user.getEmail()));
+
+        // Profile claims, dates in seconds since epoch
+        if (user.getName() != null && user.getCreatedAt() != null && user.getUpdatedAt() != null) {
+            builder.claim(NAME_CLAIM, user.getName())
+                    .claim(CREATED_AT_CLAIM, user.getCreatedAt().getEpochSecond())
+                    .claim(UPDATED_AT_CLAIM, user.getUpdatedAt().getEpochSecond());
+        }
+
+        // Key ID, for verifiers to pick the public key
+        if (signingKeyId != null) {
+            builder.header().keyId(signingKeyId);
+        }
+
+        return builder
                 // Issuer name
                 .issuer(issuer)
                 // Token is issued at the current date and time
                 .issuedAt(Date.from(Instant.now()))
                 // Token expiration
                 .expiration(Date.from(Instant.now().plus(expireDuration)))
-                // Token is signed using a secret key. Signature algorithm is HMAC using SHA-512.
-                .signWith(secretKey, Jwts.SIG.HS512)
+                // Token is signed using the secret key with HMAC using SHA-512,
+                // or using the active private key with the algorithm of that key (EdDSA, ES256...)
+                .signWith(signingKey)
                 // Compact token into its final String form.
                 .compact();
     }
 
     /**
-     * Verify a given JSON Web Token
+     * Verify a given JSON Web Token, and read its principal.
+     * Verified tokens are cached by digest until they expire,
+     * so a token seen again is neither decoded nor verified again.
      *
      * @param token String
+     * @return Optional JwtPrincipal, empty if token is invalid
+     */
+    public Optional<JwtPrincipal> verifyAccessToken(String token) {
+
+        final String digest = digest(token);
+        JwtPrincipal cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return Optional.of(cached);
+        }
+
+        Optional<JwtPrincipal> principal = parse(token);
+        principal.ifPresent(verified -> verifiedTokens.put(digest, verified));
+        return principal;
+    }
+
+    /**
+     * Public keys verifying access tokens, as a JSON Web Key Set.
+     * Empty when tokens are signed with a secret.
+     *
+     * @return JSON Web Key Set
+     */
+    public Map<String, ?> getPublicJwks() {
+        return publicJwks;
+    }
+
+    /**
+     * Check if profile claims of a token can be trusted as is.
+     * Profile claims are missing from older tokens, and may be outdated in long-lived ones.
+     *
+     * @param principal JwtPrincipal
      * @return boolean
      */
-    public boolean validateAccessToken(String token) {
+    public boolean hasFreshProfile(JwtPrincipal principal) {
+        return principal.hasProfile()
+                && principal.issuedAt() != null
+                && principal.issuedAt().plus(profileMaxAge).isAfter(Instant.now());
+    }
+
+    /**
+     * Parse and verify a JSON Web Token.
+     * Subject contains User ID and email, separated by a comma
+     *
+     * @param token String
+     * @return Optional JwtPrincipal, empty if token is invalid
+     */
+    private Optional<JwtPrincipal> parse(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(secretKey)
-                    .requireIssuer(issuer)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            String[] subject = claims.getSubject() == null ? new String[0] : claims.getSubject().split(",", 2);
+            if (subject.length != 2 || !isUserId(subject[0]) || subject[1].isEmpty()) {
+                log.error("Token subject is invalid !");
+                return Optional.empty();
+            }
+            if (claims.getExpiration() == null) {
+                log.error("Token has no expiration !");
+                return Optional.empty();
+            }
+            return Optional.of(new JwtPrincipal(
+                    claims.getId(),
+                    Integer.parseInt(subject[0]),
+                    subject[1],
+                    claims.get(NAME_CLAIM, String.class),
+                    instant(claims, CREATED_AT_CLAIM),
+                    instant(claims, UPDATED_AT_CLAIM),
+                    claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+                    claims.getExpiration().toInstant()
+            ));
         } catch (ExpiredJwtException ex) {
             log.error("JWT expired ! " + ex.getMessage());
         } catch (MalformedJwtException ex) {
@@ -96,34 +250,99 @@ public class JwtService {
             log.error("Incorrect claimn ! " + ex.getMessage());
         } catch (IllegalArgumentException ex) {
             log.error("Token is null, empty or only whitespace ! " + ex.getMessage());
+        } catch (RequiredTypeException ex) {
+            log.error("Token profile is invalid ! " + ex.getMessage());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Check if a token subject part is a User ID : 1 to 9 digits, so that it fits an int
+     *
+     * @param value subject part
+     * @return boolean
+     */
+    private static boolean isUserId(String value) {
+        if (value.isEmpty() || value.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return false;
+    /**
+     * Read a date claim, in seconds since epoch
+     *
+     * @param claims Claims
+     * @param name claim name
+     * @return Instant, null if claim is missing
+     */
+    private static Instant instant(Claims claims, String name) {
+        Object seconds = claims.get(name);
+        if (seconds == null) {
+            return null;
+        }
+        if (seconds instanceof Number number) {
+            return Instant.ofEpochSecond(number.longValue());
+        }
+        throw new RequiredTypeException("Claim " + name + " is not a number");
     }
 
     /**
-     * Gets the value of the subject field of a given token.
-     * Subject contains User ID and email
+     * SHA-256 digest of a token, Base64 encoded
      *
      * @param token String
      * @return String
      */
-    public String getSubject(String token) {
-        return parseClaims(token).getSubject();
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(ex);
+        }
     }
 
     /**
-     * Parse JWT for information (claims)
+     * Load a PKCS12 keystore, from a file or classpath location
      *
-     * @param token String
-     * @return Claims
+     * @param location keystore location
+     * @param password keystore password
+     * @return KeyStore
+     * @throws GeneralSecurityException GeneralSecurityException
+     * @throws IOException IOException
+     */
+    private static KeyStore loadKeyStore(String location, String password)
+            throws GeneralSecurityException, IOException {
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = ResourceUtils.getURL(location).openStream()) {
+            keyStore.load(input, password.toCharArray());
+        }
+        return keyStore;
+    }
+
+    /**
+     * Public keys of a keystore, by alias
+     *
+     * @param keyStore KeyStore
+     * @return Map of PublicKey by alias
+     * @throws KeyStoreException KeyStoreException
      */
-    private Claims parseClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    private static Map<String, PublicKey> publicKeys(KeyStore keyStore) throws KeyStoreException {
+        Map<String, PublicKey> publicKeys = new LinkedHashMap<>();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isKeyEntry(alias) && keyStore.getCertificate(alias) != null) {
+                publicKeys.put(alias, keyStore.getCertificate(alias).getPublicKey());
+            }
+        }
+        return Map.copyOf(publicKeys);
     }
 
     /**
@@ -142,4 +361,42 @@ public class JwtService {
 
         return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA512");
     }
+
+    /**
+     * Find verification key of a token from its kid header
+     */
+    private static class KeyIdLocator extends LocatorAdapter<Key> {
+        private final Map<String, PublicKey> publicKeys;
+
+        KeyIdLocator(Map<String, PublicKey> publicKeys) {
+            this.publicKeys = publicKeys;
+        }
+
+        @Override
+        protected Key locate(JwsHeader header) {
+            String keyId = header.getKeyId();
+            return keyId == null ? null : publicKeys.get(keyId);
+        }
+    }
+
+    /**
+     * Expire a verified token at its own expiration date
+     */
+    private static class TokenExpiry implements Expiry<String, JwtPrincipal> {
+
+        @Override
+        public long expireAfterCreate(String digest, JwtPrincipal principal, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), principal.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String digest, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return expireAfterCreate(digest, principal, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String digest, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
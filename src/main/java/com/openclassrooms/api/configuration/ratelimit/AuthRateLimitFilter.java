@@ -0,0 +1,310 @@
+package com.openclassrooms.api.configuration.ratelimit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.common.lang.NonNullApi;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filter in the middle of Spring Security filters chain, ahead of JwtFilter.
+ * Rate limits login, register and refresh requests, by client IP and by email,
+ * so abusive requests are rejected before any password hashing or database query.
+ * Email availability requests are rate limited by client IP, with their own limit,
+ * so that they cannot be used to enumerate registered emails.
+ * Client IP is the remote address, taken from X-Forwarded-For of trusted proxies (server.forward-headers-strategy).
+ */
+@Slf4j
+@NonNullApi
+@Component
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+    private static final Set<String> LIMITED_PATHS = Set.of("/api/auth/login", "/api/auth/register", "/api/auth/refresh");
+    private static final String EMAIL_AVAILABLE_PATH = "/api/auth/email-available";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final RateLimiter ipLimiter;
+    private final RateLimiter emailLimiter;
+    private final RateLimiter emailAvailableLimiter;
+    private final int maxBodySize;
+
+    /**
+     * Constructor for AuthRateLimitFilter class
+     *
+     * @param ipRequests max number of requests per period and client IP
+     * @param ipPeriod period of client IP limit
+     * @param emailRequests max number of requests per period and email
+     * @param emailPeriod period of email limit
+     * @param emailAvailableRequests max number of email availability requests per period and client IP
+     * @param emailAvailablePeriod period of email availability limit
+     * @param maxKeys max number of buckets kept by each limit
+     * @param maxBodySize max size of a rate limited request body, read in memory
+     */
+    public AuthRateLimitFilter(
+            @Value("${app.rate-limit.ip.requests}") int ipRequests,
+            @Value("${app.rate-limit.ip.period}") String ipPeriod,
+            @Value("${app.rate-limit.email.requests}") int emailRequests,
+            @Value("${app.rate-limit.email.period}") String emailPeriod,
+            @Value("${app.rate-limit.email-available.requests}") int emailAvailableRequests,
+            @Value("${app.rate-limit.email-available.period}") String emailAvailablePeriod,
+            @Value("${app.rate-limit.max-keys}") long maxKeys,
+            @Value("${app.rate-limit.max-body-size}") String maxBodySize
+    ) {
+        this.ipLimiter = new RateLimiter(ipRequests, DurationStyle.detectAndParse(ipPeriod), maxKeys);
+        this.emailLimiter = new RateLimiter(emailRequests, DurationStyle.detectAndParse(emailPeriod), maxKeys);
+        this.emailAvailableLimiter = new RateLimiter(
+                emailAvailableRequests,
+                DurationStyle.detectAndParse(emailAvailablePeriod),
+                maxKeys
+        );
+        this.maxBodySize = Math.toIntExact(DataSize.parse(maxBodySize).toBytes());
+    }
+
+    /**
+     * Only login, register, refresh and email availability requests are rate limited
+     *
+     * @param request HttpServletRequest
+     * @return boolean
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !isEmailAvailable(request)
+                && (!HttpMethod.POST.matches(request.getMethod()) || !LIMITED_PATHS.contains(path(request)));
+    }
+
+    /**
+     * Reject request with a 429 status when client IP or email is over its limit,
+     * with a 413 status when its body is over max body size,
+     * otherwise continue the downstream filters.
+     *
+     * @param request HttpServletRequest
+     * @param response HttpServletResponse
+     * @param filterChain FilterChain
+     * @throws ServletException ServletException
+     * @throws IOException IOException
+     */
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    )
+            throws ServletException, IOException {
+
+        long now = System.nanoTime();
+
+        // Email availability : client IP only, there is no body
+        if (isEmailAvailable(request)) {
+            long wait = emailAvailableLimiter.tryAcquire(request.getRemoteAddr(), now);
+            if (wait > 0) {
+                log.error("Too many email availability requests from " + request.getRemoteAddr());
+                reject(response, wait);
+                return;
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        // Client IP first : it needs no body parsing
+        long wait = ipLimiter.tryAcquire(request.getRemoteAddr(), now);
+        if (wait > 0) {
+            log.error("Too many auth requests from " + request.getRemoteAddr());
+            reject(response, wait);
+            return;
+        }
+
+        // Body is read once here, and replayed to the controller : its size is bounded before reading it
+        if (request.getContentLengthLong() > maxBodySize) {
+            log.error("Auth request body of " + request.getContentLengthLong() + " bytes from " + request.getRemoteAddr());
+            rejectTooLarge(response);
+            return;
+        }
+        byte[] body = request.getInputStream().readNBytes(maxBodySize + 1);
+        if (body.length > maxBodySize) {
+            // Chunked body, without Content-Length
+            log.error("Auth request body over " + maxBodySize + " bytes from " + request.getRemoteAddr());
+            rejectTooLarge(response);
+            return;
+        }
+
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request, body);
+        String email = readEmail(cachedRequest.body);
+        if (email != null) {
+            wait = emailLimiter.tryAcquire(email, now);
+            if (wait > 0) {
+                log.error("Too many auth requests for " + email);
+                reject(response, wait);
+                return;
+            }
+        }
+
+        filterChain.doFilter(cachedRequest, response);
+    }
+
+    /**
+     * Check if a request is an email availability request
+     *
+     * @param request HttpServletRequest
+     * @return boolean
+     */
+    private static boolean isEmailAvailable(HttpServletRequest request) {
+        return HttpMethod.GET.matches(request.getMethod()) && EMAIL_AVAILABLE_PATH.equals(path(request));
+    }
+
+    /**
+     * Request path, without context path
+     *
+     * @param request HttpServletRequest
+     * @return String
+     */
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /**
+     * Send a 429 status, with the number of seconds to wait in Retry-After header
+     *
+     * @param response HttpServletResponse
+     * @param wait nanoseconds to wait
+     * @throws IOException IOException
+     */
+    private static void reject(HttpServletResponse response, long wait) throws IOException {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{}");
+    }
+
+    /**
+     * Send a 413 status
+     *
+     * @param response HttpServletResponse
+     * @throws IOException IOException
+     */
+    private static void rejectTooLarge(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{}");
+    }
+
+    /**
+     * Read normalized top level email of a JSON body, without binding it
+     *
+     * @param body request body
+     * @return email, trimmed and lower case, or null if missing or body is not JSON
+     */
+    static String readEmail(byte[] body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("email".equals(field) && value == JsonToken.VALUE_STRING) {
+                    String email = parser.getText().trim().toLowerCase(Locale.ROOT);
+                    return email.isEmpty() ? null : email;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException ex) {
+            // Invalid JSON is rejected by the controller
+        }
+        return null;
+    }
+
+    /**
+     * Request whose body was read in memory, and can be read again
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        /**
+         * Constructor for CachedBodyRequest class
+         *
+         * @param request HttpServletRequest
+         * @param body request body, already read
+         */
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * Body is in memory : it is all available at once
+                 *
+                 * @param listener ReadListener
+                 */
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException ex) {
+                        listener.onError(ex);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) {
+                    return input.read(bytes, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(
+                    getInputStream(),
+                    encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)
+            ));
+        }
+    }
+}
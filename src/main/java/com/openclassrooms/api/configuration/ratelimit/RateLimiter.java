@@ -0,0 +1,66 @@
+package com.openclassrooms.api.configuration.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter, one bucket per key.
+ * Each bucket is a single AtomicLong holding its theoretical arrival time (GCRA) :
+ * a request is allowed when this time is not further in the future than the burst allows,
+ * and pushes it by one emission interval with a compare-and-set.
+ * Buckets live in a Caffeine cache, and expire once idle until their refill horizon, when they are full again anyway :
+ * only buckets of keys seen within the last period are kept. Its size cap only bounds memory, and is meant
+ * to be larger than the number of keys seen in a period, so that spraying new keys cannot evict active buckets.
+ */
+public class RateLimiter {
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * Constructor for RateLimiter class
+     *
+     * @param requests max number of requests per period, also max burst
+     * @param period period
+     * @param maxKeys max number of buckets kept
+     */
+    public RateLimiter(int requests, Duration period, long maxKeys) {
+        if (requests < 1) {
+            throw new IllegalArgumentException("Rate limit requests must be positive");
+        }
+        this.emissionInterval = period.toNanos() / requests;
+        this.burstTolerance = emissionInterval * (requests - 1);
+        // Last allowed request pushes arrival time at most one emission interval past burst tolerance
+        Duration refillHorizon = Duration.ofNanos(burstTolerance + emissionInterval);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(refillHorizon)
+                .build();
+    }
+
+    /**
+     * Take one token from the bucket of a key
+     *
+     * @param key bucket key
+     * @param now current time, from System.nanoTime()
+     * @return 0 if request is allowed, otherwise nanoseconds to wait before next allowed request
+     */
+    public long tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(now));
+
+        while (true) {
+            long current = bucket.get();
+            long arrival = Math.max(current, now);
+            long wait = arrival - burstTolerance - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(current, arrival + emissionInterval)) {
+                return 0;
+            }
+        }
+    }
+}
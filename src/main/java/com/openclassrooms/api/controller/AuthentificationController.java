@@ -2,10 +2,13 @@ package com.openclassrooms.api.controller;
 
 import com.openclassrooms.api.exception.BadRequestException;
 import com.openclassrooms.api.exception.InvalidCredentialsException;
+import com.openclassrooms.api.configuration.jwt.JwtPrincipal;
 import com.openclassrooms.api.model.request.auth.LoginRequest;
+import com.openclassrooms.api.model.request.auth.RefreshRequest;
 import com.openclassrooms.api.model.response.*;
 import com.openclassrooms.api.model.request.auth.RegisterRequest;
 import com.openclassrooms.api.model.response.auth.AuthMeResponse;
+import com.openclassrooms.api.model.response.auth.EmailAvailableResponse;
 import com.openclassrooms.api.model.entity.User;
 import com.openclassrooms.api.service.AuthentificationService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -21,10 +24,12 @@ import jakarta.validation.ValidatorFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Authentification REST controller
@@ -59,7 +64,7 @@ public class AuthentificationController {
      * Register route
      *
      * @param request RegisterRequest
-     * @return TokenResponse
+     * @return CompletableFuture of TokenResponse
      * @throws BadRequestException BadRequestException
      */
     @Operation(summary = "register", description = "Sign up")
@@ -72,6 +77,10 @@ public class AuthentificationController {
             @ApiResponse(responseCode = "400", content = @Content(
                     mediaType = "application/json",
                     schema = @Schema(implementation = EmptyResponse.class)
+            )),
+            @ApiResponse(responseCode = "503", content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = EmptyResponse.class)
             ))
     })
     @PostMapping(
@@ -79,27 +88,24 @@ public class AuthentificationController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public TokenResponse register(@RequestBody RegisterRequest request)
+    public CompletableFuture<TokenResponse> register(@RequestBody RegisterRequest request)
             throws  BadRequestException {
 
         if (!validator.validate(request).isEmpty()) {
             throw new BadRequestException();
         }
-        Optional<String> optToken;
-        optToken = this.authentificationService.registerUser(
+        return this.authentificationService.registerUser(
                 request.getEmail(),
                 request.getName(),
                 request.getPassword()
-        );
-        return optToken.map(TokenResponse::new)
-                .orElseThrow(BadRequestException::new);
+        ).thenApply(optTokens -> optTokens.orElseThrow(BadRequestException::new));
     }
 
     /**
      * Login route
      *
      * @param request LoginRequest
-     * @return TokenResponse
+     * @return CompletableFuture of TokenResponse
      * @throws InvalidCredentialsException InvalidCredentialsException
      */
     @Operation(summary = "login", description = "Sign in")
@@ -111,28 +117,127 @@ public class AuthentificationController {
             mediaType = "application/json",
             schema = @Schema(implementation = MessageResponse.class)
     ))
+    @ApiResponse( responseCode = "503", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
     @PostMapping(
             path = "login",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
 
-    public TokenResponse login(@RequestBody LoginRequest request)
+    public CompletableFuture<TokenResponse> login(@RequestBody LoginRequest request)
             throws InvalidCredentialsException {
 
         if (!validator.validate(request).isEmpty()) {
             throw new InvalidCredentialsException(ERROR_MESSAGE);
         }
-        Optional<String> optToken = this.authentificationService.loginUser(
+        return this.authentificationService.loginUser(
                 request.getEmail(),
                 request.getPassword()
-        );
-        return optToken.map(TokenResponse::new)
+        ).thenApply(optTokens -> optTokens.orElseThrow(() -> new InvalidCredentialsException(ERROR_MESSAGE)));
+    }
+
+    /**
+     * Refresh route
+     * Refresh token is used only once : a new one is returned with the new access token.
+     *
+     * @param request RefreshRequest
+     * @return TokenResponse
+     * @throws InvalidCredentialsException if refresh token is invalid, expired or already used
+     */
+    @Operation(summary = "refresh", description = "Get new tokens from a refresh token")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = TokenResponse.class)
+    ))
+    @ApiResponse( responseCode = "401", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = MessageResponse.class)
+    ))
+    @PostMapping(
+            path = "refresh",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public TokenResponse refresh(@RequestBody RefreshRequest request) throws InvalidCredentialsException {
+
+        if (!validator.validate(request).isEmpty()) {
+            throw new InvalidCredentialsException(ERROR_MESSAGE);
+        }
+        return authentificationService.refresh(request.getRefreshToken())
                 .orElseThrow(() -> new InvalidCredentialsException(ERROR_MESSAGE));
     }
 
+    /**
+     * Logout route
+     * Revokes current access token, and refresh token if given.
+     *
+     * @param request RefreshRequest, optional
+     * @param principal Principal
+     * @return EmptyResponse
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    @Operation(summary = "logout", description = "Revoke tokens")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @ApiResponse( responseCode = "401", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @PostMapping(
+            path = "logout",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public EmptyResponse logout(@RequestBody(required = false) RefreshRequest request, Principal principal)
+            throws InvalidCredentialsException {
+
+        if (!(principal instanceof Authentication authentication)
+                || !(authentication.getCredentials() instanceof JwtPrincipal jwtPrincipal)) {
+            throw new InvalidCredentialsException();
+        }
+        authentificationService.logout(jwtPrincipal, request == null ? null : request.getRefreshToken());
+        return new EmptyResponse();
+    }
+
+    /**
+     * Email availability route
+     * Answered from memory when email is definitely free.
+     *
+     * @param email email
+     * @return EmailAvailableResponse
+     * @throws BadRequestException if email is invalid
+     */
+    @Operation(summary = "email-available", description = "Check if an email can be registered")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmailAvailableResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @GetMapping(
+            path = "email-available",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public EmailAvailableResponse emailAvailable(@RequestParam(required = false) String email)
+            throws BadRequestException {
+
+        if (email == null || !validator.validateValue(RegisterRequest.class, "email", email).isEmpty()) {
+            throw new BadRequestException();
+        }
+        return new EmailAvailableResponse(authentificationService.isEmailAvailable(email));
+    }
+
     /**
      * auth/me route
+     * Profile is read from access token claims when they are fresh,
+     * otherwise from user cache.
      *
      * @param principal Principal
      * @return AuthMeResponse
@@ -158,10 +263,31 @@ public class AuthentificationController {
             log.error("Principal is null !");
             throw new InvalidCredentialsException();
         }
+
+        // Token profile claims
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User user
+                && hasProfile(user)) {
+            return conversionService.convert(user, AuthMeResponse.class);
+        }
+
         Optional<User> optUser = authentificationService.authUser(principal.getName());
 
         return optUser.map(user -> conversionService.convert(user, AuthMeResponse.class))
                 .orElseThrow(InvalidCredentialsException::new);
     }
 
+    /**
+     * Check if an authenticated user carries a complete profile
+     *
+     * @param user User
+     * @return boolean
+     */
+    private static boolean hasProfile(User user) {
+        return user.getId() > 0
+                && user.getName() != null
+                && user.getCreatedAt() != null
+                && user.getUpdatedAt() != null;
+    }
+
 }
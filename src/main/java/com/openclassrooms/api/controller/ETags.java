@@ -0,0 +1,52 @@
+package com.openclassrooms.api.controller;
+
+import com.openclassrooms.api.model.version.TableVersion;
+
+import java.time.Instant;
+
+/**
+ * Strong ETags for conditional GET requests.
+ * Built from versions read by cheap queries, so that 304 Not Modified is answered
+ * without loading nor serializing entities.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * ETag of a single resource
+     *
+     * @param name resource name
+     * @param id resource ID
+     * @param updatedAt resource last update date
+     * @return quoted ETag
+     */
+    static String of(String name, int id, Instant updatedAt) {
+        return "\"" + name + "-" + id + "-" + timestamp(updatedAt) + "\"";
+    }
+
+    /**
+     * ETag of a collection
+     *
+     * @param name collection name and representation
+     * @param version table version
+     * @return quoted ETag
+     */
+    static String of(String name, TableVersion version) {
+        return "\"" + name + "-" + timestamp(version.lastUpdatedAt()) + "-" + version.count() + "\"";
+    }
+
+    /**
+     * Timestamp with nanoseconds, 0 if null
+     *
+     * @param instant Instant
+     * @return String
+     */
+    private static String timestamp(Instant instant) {
+        if (instant == null) {
+            return "0";
+        }
+        return instant.getEpochSecond() + "." + instant.getNano();
+    }
+}
@@ -0,0 +1,54 @@
+package com.openclassrooms.api.controller;
+
+import com.openclassrooms.api.configuration.jwt.JwtService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * JSON Web Key Set REST controller
+ * Publishes public keys verifying access tokens, for gateways and other nodes.
+ */
+@Tag( name = "jwks", description = "Access tokens public keys" )
+@RestController
+public class JwksController {
+    private static final String JWK_SET_VALUE = "application/jwk-set+json";
+
+    private final JwtService jwtService;
+
+    /**
+     * Constructor for JwksController class
+     *
+     * @param jwtService JwtService
+     */
+    public JwksController(JwtService jwtService) {
+        this.jwtService = jwtService;
+    }
+
+    /**
+     * JWKS route
+     * Key set is empty when tokens are signed with a secret.
+     *
+     * @return JSON Web Key Set
+     */
+    @Operation(summary = "jwks", description = "Public keys verifying access tokens")
+    @ApiResponse( responseCode = "200", content = @Content(mediaType = JWK_SET_VALUE))
+    @GetMapping(
+            path = "/.well-known/jwks.json",
+            produces = { JWK_SET_VALUE, "application/json" }
+    )
+    public ResponseEntity<Map<String, ?>> getJwks() {
+        // Verifiers may cache keys : a new key must be published before it signs tokens
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                .body(jwtService.getPublicJwks());
+    }
+}
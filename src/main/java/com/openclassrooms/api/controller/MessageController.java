@@ -1,11 +1,21 @@
 package com.openclassrooms.api.controller;
 
+import com.openclassrooms.api.configuration.jwt.AuthenticatedUser;
+import com.openclassrooms.api.configuration.jwt.JwtPrincipal;
 import com.openclassrooms.api.exception.BadRequestException;
+import com.openclassrooms.api.exception.InvalidCredentialsException;
+import com.openclassrooms.api.model.pagination.KeysetCursor;
 import com.openclassrooms.api.model.request.message.MessageRequest;
 import com.openclassrooms.api.model.response.EmptyResponse;
 import com.openclassrooms.api.model.response.MessageResponse;
 import com.openclassrooms.api.model.response.TokenResponse;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.model.response.message.InboxResponse;
 import com.openclassrooms.api.service.MessageService;
+import com.openclassrooms.api.service.idempotency.IdempotencyStore;
+import com.openclassrooms.api.service.idempotency.RequestFingerprint;
+import com.openclassrooms.api.service.message.MessageDurability;
+import com.openclassrooms.api.service.message.MessageStreams;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -13,36 +23,72 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Message REST controller
  */
+@Slf4j
 @Tag( name = "message", description = "Messages operations" )
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String POST_ROUTE = "POST /api/messages";
+
     private final MessageService messageService;
+    private final MessageStreams messageStreams;
+    private final IdempotencyStore idempotencyStore;
 
     /**
      * Constructor for MessageController class
      *
      * @param messageService MessageService
+     * @param messageStreams MessageStreams
+     * @param idempotencyStore IdempotencyStore
      */
-    public MessageController(MessageService messageService) {
+    public MessageController(
+            MessageService messageService,
+            MessageStreams messageStreams,
+            IdempotencyStore idempotencyStore
+    ) {
         this.messageService = messageService;
+        this.messageStreams = messageStreams;
+        this.idempotencyStore = idempotencyStore;
     }
 
     /**
      * Send message route
+     * With "Prefer: respond-async" header, and write-behind enabled,
+     * message is acknowledged once queued, with status 202, instead of once committed.
+     * With an "Idempotency-Key" header, a retried request gets the response of the first one, and sends nothing,
+     * unless its payload differs, which is rejected with status 422. Such a message is always acknowledged once
+     * committed, whatever the Prefer header : a replayed response never acknowledges a message that was not stored.
      *
      * @param request MessageRequest
-     * @return MessageResponse
+     * @param prefer Prefer header
+     * @param idempotencyKey Idempotency-Key header
+     * @param principal Principal
+     * @return CompletableFuture of MessageResponse
      * @throws BadRequestException BadRequestException
+     * @throws InvalidCredentialsException InvalidCredentialsException
      */
     @Operation(summary = "message", description = "Send new message")
     @SecurityRequirement(name = "Bearer Authentication")
@@ -50,6 +96,10 @@ public class MessageController {
             mediaType = "application/json",
             schema = @Schema(implementation = TokenResponse.class)
     ))
+    @ApiResponse( responseCode = "202", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = MessageResponse.class)
+    ))
     @ApiResponse( responseCode = "400", content = @Content(
             mediaType = "application/json",
             schema = @Schema(implementation = EmptyResponse.class )
@@ -58,17 +108,193 @@ public class MessageController {
             mediaType = "application/json",
             schema = @Schema(implementation = EmptyResponse.class)
     ))
+    @ApiResponse( responseCode = "422", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = MessageResponse.class)
+    ))
+    @ApiResponse( responseCode = "503", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
     @PostMapping(
             path = "",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public MessageResponse post(@Valid @RequestBody MessageRequest request) throws BadRequestException {
+    public CompletableFuture<ResponseEntity<MessageResponse>> post(
+            @Valid @RequestBody MessageRequest request,
+            @RequestHeader(name = PREFER, required = false) String prefer,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            Principal principal
+    ) throws BadRequestException, InvalidCredentialsException {
+
+        if (idempotencyKey == null) {
+            return send(
+                    request,
+                    prefersAsync(prefer) ? MessageDurability.ENQUEUED : MessageDurability.COMMITTED
+            );
+        }
+
+        if (!IdempotencyStore.isValid(idempotencyKey)) {
+            log.error("Invalid " + IdempotencyStore.IDEMPOTENCY_KEY + " : " + idempotencyKey);
+            throw new BadRequestException();
+        }
+        AuthenticatedUser user = AuthenticatedUser.of(principal)
+                .orElseThrow(InvalidCredentialsException::new);
+        String fingerprint = new RequestFingerprint()
+                .add(request.getMessage())
+                .add(request.getUserId())
+                .add(request.getRentalId())
+                .value();
+        return idempotencyStore.execute(
+                user.id(),
+                POST_ROUTE,
+                idempotencyKey,
+                fingerprint,
+                () -> send(request, MessageDurability.COMMITTED)
+        );
+    }
+
+    /**
+     * Send a message, and build response
+     *
+     * @param request MessageRequest
+     * @param durability requested acknowledgement point
+     * @return CompletableFuture of MessageResponse
+     * @throws BadRequestException BadRequestException
+     */
+    private CompletableFuture<ResponseEntity<MessageResponse>> send(
+            MessageRequest request,
+            MessageDurability durability
+    ) throws BadRequestException {
+
+        return messageService.sendMessage(request.getMessage(), request.getUserId(), request.getRentalId(), durability)
+                .thenApply(optDurability -> switch (optDurability.orElseThrow(BadRequestException::new)) {
+                    case ENQUEUED -> ResponseEntity.accepted()
+                            .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                            .body(new MessageResponse("Message accepted"));
+                    case COMMITTED -> ResponseEntity.ok(new MessageResponse("Message sent with success"));
+                });
+    }
 
-        if ( messageService.sendMessage(request.getMessage(), request.getUserId(), request.getRentalId()) ) {
+    /**
+     * Check if a Prefer header asks for an asynchronous response
+     *
+     * @param prefer Prefer header, may be null
+     * @return boolean
+     */
+    private static boolean prefersAsync(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(",")) {
+            if (RESPOND_ASYNC.equalsIgnoreCase(preference.split(";", 2)[0].trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inbox route
+     * Return a page of messages about the rentals of the authenticated user, newest first,
+     * with a cursor to the next page if any.
+     *
+     * @param cursor opaque cursor returned with previous page
+     * @param size page size
+     * @param principal Principal
+     * @return InboxResponse
+     * @throws BadRequestException BadRequestException
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    @Operation(summary = "inbox", description = "Get a page of messages about my rentals")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = InboxResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class )
+    ))
+    @ApiResponse( responseCode = "401", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @GetMapping(
+            path = "/inbox",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public InboxResponse getInbox(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            Principal principal
+    ) throws BadRequestException, InvalidCredentialsException {
+
+        AuthenticatedUser user = AuthenticatedUser.of(principal)
+                .orElseThrow(InvalidCredentialsException::new);
+        try {
+            KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+            return messageService.toResponse(messageService.listInbox(user, after, size));
+        } catch (IllegalArgumentException ex) {
+            log.error(ex.getMessage());
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Messages stream route (Server-Sent Events)
+     * Push messages about the rentals of the authenticated user as soon as they are committed,
+     * with heartbeat comments in between. No request thread is held while the stream is idle.
+     * A reconnecting client gets the messages sent after its Last-Event-ID first.
+     * Stream ends when its access token expires, or on logout.
+     *
+     * @param lastEventId ID of the last message received, sent by reconnecting clients
+     * @param principal Principal
+     * @return SseEmitter
+     * @throws BadRequestException BadRequestException
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    @Operation(summary = "stream", description = "Receive messages about my rentals as they are sent")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "text/event-stream",
+            schema = @Schema(implementation = InboxMessageResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class )
+    ))
+    @ApiResponse( responseCode = "401", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @GetMapping(
+            path = "/stream",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    public SseEmitter stream(
+            @RequestHeader(name = LAST_EVENT_ID, required = false) String lastEventId,
+            Principal principal
+    ) throws BadRequestException, InvalidCredentialsException {
 
-            return new MessageResponse("Message sent with success");
+        AuthenticatedUser user = AuthenticatedUser.of(principal)
+                .orElseThrow(InvalidCredentialsException::new);
+        // Stream ends with the access token opening it
+        JwtPrincipal token = principal instanceof Authentication authentication
+                && authentication.getCredentials() instanceof JwtPrincipal jwtPrincipal
+                ? jwtPrincipal
+                : null;
+        try {
+            return messageStreams.subscribe(
+                    user.id(),
+                    token == null ? null : token.tokenId(),
+                    lastEventId == null ? null : Integer.valueOf(lastEventId.trim()),
+                    token == null ? null : token.expiresAt()
+            );
+        } catch (NumberFormatException ex) {
+            log.error("Invalid " + LAST_EVENT_ID + " : " + lastEventId);
+            throw new BadRequestException();
         }
-        throw new BadRequestException();
     }
 }
@@ -1,14 +1,28 @@
 package com.openclassrooms.api.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.api.configuration.jwt.AuthenticatedUser;
+import com.openclassrooms.api.exception.BadRequestException;
 import com.openclassrooms.api.exception.InvalidCredentialsException;
-import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.pagination.KeysetCursor;
 import com.openclassrooms.api.model.request.rentals.CreateRentalRequest;
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
 import com.openclassrooms.api.model.request.rentals.UpdateRentalRequest;
 import com.openclassrooms.api.model.response.EmptyResponse;
 import com.openclassrooms.api.model.response.MessageResponse;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.model.response.message.InboxResponse;
+import com.openclassrooms.api.model.response.rental.ImportRentalsResponse;
 import com.openclassrooms.api.model.response.rental.RentalResponse;
 import com.openclassrooms.api.model.response.rental.RentalsResponse;
+import com.openclassrooms.api.service.MessageService;
+import com.openclassrooms.api.service.RentalImportService;
 import com.openclassrooms.api.service.RentalService;
+import com.openclassrooms.api.service.idempotency.IdempotencyStore;
+import com.openclassrooms.api.service.idempotency.RequestFingerprint;
+import com.openclassrooms.api.service.json.RentalJsonCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -17,14 +31,23 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.core.convert.ConversionService;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -41,44 +64,250 @@ import java.util.Optional;
         schema = @Schema(implementation = EmptyResponse.class)
 ))
 public class RentalController {
+    private static final byte[] RENTALS_START = "{\"rentals\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEXT_CURSOR = "],\"next_cursor\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RENTALS_END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String OWNER_ME = "me";
+    private static final String POST_ROUTE = "POST /api/rentals";
+
     private final RentalService rentalService;
-    private final ConversionService conversionService;
+    private final RentalImportService rentalImportService;
+    private final RentalJsonCache rentalJsonCache;
+    private final MessageService messageService;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectMapper objectMapper;
 
     /**
      * Constructor for RentalController class
      * @param rentalService RentalService
-     * @param conversionService ConversionService
+     * @param rentalImportService RentalImportService
+     * @param rentalJsonCache RentalJsonCache
+     * @param messageService MessageService
+     * @param idempotencyStore IdempotencyStore
+     * @param objectMapper ObjectMapper
      */
     public RentalController(
             RentalService rentalService,
-            ConversionService conversionService
+            RentalImportService rentalImportService,
+            RentalJsonCache rentalJsonCache,
+            MessageService messageService,
+            IdempotencyStore idempotencyStore,
+            ObjectMapper objectMapper
     ) {
         this.rentalService = rentalService;
-        this.conversionService = conversionService;
+        this.rentalImportService = rentalImportService;
+        this.rentalJsonCache = rentalJsonCache;
+        this.messageService = messageService;
+        this.idempotencyStore = idempotencyStore;
+        this.objectMapper = objectMapper;
     }
 
 
     /**
      * Rentals list route
-     * @return RentalsResponse
+     * All rentals are streamed as a chunked JSON array, one rental at a time,
+     * so memory stays flat whatever the number of rentals.
+     * Rentals JSON is written from cache, unless they were updated since.
+     *
+     * @param webRequest WebRequest
+     * @return StreamingResponseBody
      */
     @Operation(summary = "get all", description = "Get all rentals")
+    @ApiResponse( responseCode = "304")
     @GetMapping(
             path = "",
+            params = {"!cursor", "!size", "!minPrice", "!maxPrice", "!minSurface", "!maxSurface", "!sort", "!owner"},
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public RentalsResponse getRentals() {
+    public ResponseEntity<StreamingResponseBody> getRentals(WebRequest webRequest) {
+
+        if (webRequest.checkNotModified(ETags.of("rentals-json", rentalService.getRentalsVersion()))) {
+            return null;
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            outputStream.write(RENTALS_START);
+            boolean[] first = {true};
+            rentalService.forEachRental(rental -> {
+                try {
+                    if (!first[0]) {
+                        outputStream.write(',');
+                    }
+                    outputStream.write(rentalJsonCache.toJson(rental));
+                    first[0] = false;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            outputStream.write(RENTALS_END);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Rentals stream route
+     * All rentals are streamed as newline delimited JSON, one rental per line.
+     *
+     * @param webRequest WebRequest
+     * @return StreamingResponseBody
+     */
+    @Operation(summary = "stream all", description = "Stream all rentals as newline delimited JSON")
+    @ApiResponse( responseCode = "304")
+    @GetMapping(
+            path = "",
+            produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> streamRentals(WebRequest webRequest) {
+
+        if (webRequest.checkNotModified(ETags.of("rentals-ndjson", rentalService.getRentalsVersion()))) {
+            return null;
+        }
+
+        StreamingResponseBody body = outputStream -> rentalService.forEachRental(rental -> {
+            try {
+                outputStream.write(rentalJsonCache.toJson(rental));
+                outputStream.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Rentals page route
+     * Return a page of rentals matching price and surface ranges, and owner, in requested sort,
+     * with a cursor to the next page if any.
+     *
+     * @param minPrice min price, inclusive
+     * @param maxPrice max price, inclusive
+     * @param minSurface min surface, inclusive
+     * @param maxSurface max surface, inclusive
+     * @param owner owner ID, or "me" for the authenticated user
+     * @param sort comma separated sort fields among price, surface, created_at, "-" prefixed for descending order
+     * @param cursor opaque cursor returned with previous page
+     * @param size page size
+     * @param webRequest WebRequest
+     * @param principal Principal
+     * @return RentalsResponse JSON
+     * @throws BadRequestException BadRequestException
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    @Operation(summary = "get page", description = "Get a page of rentals, filtered and sorted")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = RentalsResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @ApiResponse( responseCode = "304")
+    @GetMapping(
+            path = "",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<byte[]> getRentalsPage(
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) BigDecimal minSurface,
+            @RequestParam(required = false) BigDecimal maxSurface,
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            WebRequest webRequest,
+            Principal principal
+    ) throws BadRequestException, InvalidCredentialsException {
+
+        RentalFilter filter = new RentalFilter(minPrice, maxPrice, minSurface, maxSurface, ownerId(owner, principal));
+        RentalSort rentalSort;
+        KeysetCursor after = null;
+        try {
+            rentalSort = RentalSort.parse(sort);
+            if (cursor != null) {
+                after = KeysetCursor.decode(cursor);
+            }
+        } catch (IllegalArgumentException ex) {
+            log.error(ex.getMessage());
+            throw new BadRequestException();
+        }
+
+        if (webRequest.checkNotModified(ETags.of("rentals-page", rentalService.getRentalsVersion()))) {
+            return null;
+        }
 
-        Iterable<Rental> rentals = rentalService.listRentals();
+        Slice<RentalResponse> page;
+        try {
+            page = rentalService.listRentals(filter, rentalSort, after, size);
+        } catch (IllegalArgumentException ex) {
+            // Cursor built for another sort, or with invalid values
+            log.error(ex.getMessage());
+            throw new BadRequestException();
+        }
+
+        // Cursor to next page is the position of the last row of this page
+        String nextCursor = null;
+        if (page.hasNext()) {
+            RentalResponse last = page.getContent().get(page.getNumberOfElements() - 1);
+            nextCursor = rentalService.cursorOf(rentalSort, last).encode();
+        }
+
+        return rentalsJson(page.getContent(), nextCursor);
+    }
+
+
+    /**
+     * Search Rentals route
+     * Rentals whose name or description match the query, ordered by decreasing relevance.
+     *
+     * @param q search query
+     * @param page page number, starting at 0
+     * @param size page size
+     * @return RentalsResponse JSON
+     * @throws BadRequestException BadRequestException
+     */
+    @Operation(summary = "search", description = "Search rentals by name and description")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = RentalsResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @GetMapping(
+            path = "/search",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<byte[]> searchRentals(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size
+    ) throws BadRequestException {
 
-        List<RentalResponse> rentalsList = new ArrayList<>();
+        if (q.isBlank()) {
+            throw new BadRequestException();
+        }
 
-        for (Rental rental : rentals) {
-            rentalsList.add(conversionService.convert(rental, RentalResponse.class));
+        List<RentalResponse> rentals;
+        try {
+            rentals = rentalService.searchRentals(q, page, size);
+        } catch (IllegalArgumentException ex) {
+            // Negative page, or page too far
+            log.error(ex.getMessage());
+            throw new BadRequestException();
         }
-        return RentalsResponse.builder()
-                .rentals(rentalsList)
-                .build();
+
+        return rentalsJson(rentals, null);
     }
 
 
@@ -86,31 +315,172 @@ public class RentalController {
      * Get Rental route
      *
      * @param id Rental id
-     * @return RentalResponse
+     * @param webRequest WebRequest
+     * @return RentalResponse JSON
      * @throws InvalidCredentialsException InvalidCredentialsException
      */
     @Operation(summary = "get", description = "Get rental by id")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = RentalResponse.class)
+    ))
+    @ApiResponse( responseCode = "304")
     @GetMapping(
             path = "/{id}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public RentalResponse getRental(@PathVariable int id) throws InvalidCredentialsException {
-
-        Optional<Rental> optRental = rentalService.getRental(id);
+    public ResponseEntity<byte[]> getRental(@PathVariable int id, WebRequest webRequest)
+            throws InvalidCredentialsException {
 
-        return optRental.map(
-                        rental -> conversionService.convert(rental, RentalResponse.class))
+        // Rental is read from cache, its version too
+        RentalResponse rental = rentalService.getRental(id)
                 .orElseThrow(InvalidCredentialsException::new);
+
+        if (webRequest.checkNotModified(ETags.of("rental", id, rental.updatedAt()))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rentalJsonCache.toJson(rental));
+    }
+
+
+    /**
+     * Rental messages route
+     * Return a page of messages about a rental, newest first, with a cursor to the next page if any.
+     * Only the rental owner reads its messages.
+     *
+     * @param id Rental id
+     * @param cursor opaque cursor returned with previous page
+     * @param size page size
+     * @param principal Principal
+     * @return InboxResponse
+     * @throws BadRequestException BadRequestException
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    @Operation(summary = "get messages", description = "Get a page of messages about my rental")
+    @ApiResponse( responseCode = "200", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = InboxResponse.class)
+    ))
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @GetMapping(
+            path = "/{id}/messages",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public InboxResponse getRentalMessages(
+            @PathVariable int id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            Principal principal
+    ) throws BadRequestException, InvalidCredentialsException {
+
+        AuthenticatedUser user = authenticatedUser(principal);
+        Optional<Slice<InboxMessageResponse>> optPage;
+        try {
+            KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+            optPage = messageService.listRentalMessages(id, user, after, size);
+        } catch (IllegalArgumentException ex) {
+            log.error(ex.getMessage());
+            throw new BadRequestException();
+        }
+        return messageService.toResponse(optPage.orElseThrow(InvalidCredentialsException::new));
+    }
+
+
+    /**
+     * Return owner ID of an owner parameter.
+     * "me" is the authenticated user, whose ID is read from the principal built by JwtFilter.
+     *
+     * @param owner owner ID, "me", or null for any owner
+     * @param principal Principal
+     * @return owner ID, null for any owner
+     * @throws BadRequestException if owner is neither "me" nor an ID
+     * @throws InvalidCredentialsException if authenticated user ID is unknown
+     */
+    private static Integer ownerId(String owner, Principal principal)
+            throws BadRequestException, InvalidCredentialsException {
+
+        if (owner == null) {
+            return null;
+        }
+        if (OWNER_ME.equals(owner)) {
+            return authenticatedUser(principal).id();
+        }
+        try {
+            return Integer.valueOf(owner);
+        } catch (NumberFormatException ex) {
+            log.error("Invalid owner : " + owner);
+            throw new BadRequestException();
+        }
+    }
+
+
+    /**
+     * Return authenticated user, whose ID is read from the principal built by JwtFilter
+     *
+     * @param principal Principal
+     * @return AuthenticatedUser
+     * @throws InvalidCredentialsException if authenticated user ID is unknown
+     */
+    private static AuthenticatedUser authenticatedUser(Principal principal) throws InvalidCredentialsException {
+        return AuthenticatedUser.of(principal).orElseThrow(() -> {
+            log.error("No user ID in principal " + principal);
+            return new InvalidCredentialsException();
+        });
+    }
+
+
+    /**
+     * Rentals list JSON, assembled from cached rentals JSON
+     *
+     * @param rentals List of RentalResponse
+     * @param nextCursor cursor to next page, null if none
+     * @return RentalsResponse JSON
+     */
+    private ResponseEntity<byte[]> rentalsJson(List<RentalResponse> rentals, String nextCursor) {
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.writeBytes(RENTALS_START);
+        for (int i = 0; i < rentals.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            json.writeBytes(rentalJsonCache.toJson(rentals.get(i)));
+        }
+        if (nextCursor == null) {
+            json.writeBytes(RENTALS_END);
+        } else {
+            try {
+                json.writeBytes(NEXT_CURSOR);
+                json.writeBytes(objectMapper.writeValueAsBytes(nextCursor));
+                json.write('}');
+            } catch (JsonProcessingException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json.toByteArray());
     }
 
 
     /**
      * Create Rental route
+     * With an "Idempotency-Key" header, a retried request gets the response of the first one,
+     * and neither stores its picture nor saves a rental, unless its fields or picture differ,
+     * which is rejected with status 422.
      *
      * @param request CreateRentalRequest
+     * @param idempotencyKey Idempotency-Key header
      * @param principal Principal
-     * @return MessageResponse
+     * @return CompletableFuture of MessageResponse
      * @throws InvalidCredentialsException InvalidCredentialsException
+     * @throws BadRequestException BadRequestException
      */
     @Operation(summary = "create", description = "Create new rental")
     @PostMapping(
@@ -118,10 +488,53 @@ public class RentalController {
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public MessageResponse postRental(
+    public CompletableFuture<ResponseEntity<MessageResponse>> postRental(
             @ModelAttribute CreateRentalRequest request,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
             Principal principal
-    ) throws InvalidCredentialsException {
+    ) throws InvalidCredentialsException, BadRequestException {
+
+        AuthenticatedUser user = authenticatedUser(principal);
+        if (idempotencyKey == null) {
+            return CompletableFuture.completedFuture(createRental(request, user));
+        }
+
+        if (!IdempotencyStore.isValid(idempotencyKey)) {
+            log.error("Invalid " + IdempotencyStore.IDEMPOTENCY_KEY + " : " + idempotencyKey);
+            throw new BadRequestException();
+        }
+        String fingerprint;
+        try {
+            fingerprint = new RequestFingerprint()
+                    .add(request.getName())
+                    .add(request.getSurface())
+                    .add(request.getPrice())
+                    .add(request.getDescription())
+                    .add(request.getPicture() == null ? null : request.getPicture().getInputStream())
+                    .value();
+        } catch (IOException ex) {
+            log.error("Rental picture not readable : " + ex.getMessage());
+            throw new BadRequestException();
+        }
+        return idempotencyStore.execute(
+                user.id(),
+                POST_ROUTE,
+                idempotencyKey,
+                fingerprint,
+                () -> CompletableFuture.completedFuture(createRental(request, user))
+        );
+    }
+
+    /**
+     * Create a rental, and build response
+     *
+     * @param request CreateRentalRequest
+     * @param user authenticated user
+     * @return ResponseEntity of MessageResponse
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     */
+    private ResponseEntity<MessageResponse> createRental(CreateRentalRequest request, AuthenticatedUser user)
+            throws InvalidCredentialsException {
 
         if (rentalService.saveRental(
                 request.getName(),
@@ -129,9 +542,9 @@ public class RentalController {
                 request.getPrice(),
                 request.getPicture(),
                 request.getDescription(),
-                principal.getName()
+                user
         )) {
-            return new MessageResponse("Rental created !");
+            return ResponseEntity.ok(new MessageResponse("Rental created !"));
         }
         throw new InvalidCredentialsException();
     }
@@ -165,12 +578,77 @@ public class RentalController {
                 request.getSurface(),
                 request.getPrice(),
                 request.getDescription(),
-                principal.getName()
-
+                authenticatedUser(principal)
         )
         ) {
             return new MessageResponse("Rental updated !");
         }
         throw new InvalidCredentialsException();
     }
+
+
+    /**
+     * Import Rentals route, from newline delimited JSON
+     * Each line is a rental : name, surface, price, picture (URL or stored image filename), description.
+     * Report counts imported and rejected rows, and lists the first rejected ones.
+     *
+     * @param body request body
+     * @param principal Principal
+     * @return ImportRentalsResponse
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     * @throws BadRequestException BadRequestException
+     */
+    @Operation(summary = "import NDJSON", description = "Import rentals from newline delimited JSON")
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @PostMapping(
+            path = "/import",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ImportRentalsResponse importNdjson(InputStream body, Principal principal)
+            throws InvalidCredentialsException, BadRequestException {
+
+        try {
+            return rentalImportService.importNdjson(body, authenticatedUser(principal));
+        } catch (IOException ex) {
+            log.error("Rentals import interrupted : " + ex.getMessage());
+            throw new BadRequestException();
+        }
+    }
+
+
+    /**
+     * Import Rentals route, from CSV
+     * First line names columns : name, surface, price, picture (URL or stored image filename), description.
+     * Report counts imported and rejected rows, and lists the first rejected ones.
+     *
+     * @param body request body
+     * @param principal Principal
+     * @return ImportRentalsResponse
+     * @throws InvalidCredentialsException InvalidCredentialsException
+     * @throws BadRequestException BadRequestException
+     */
+    @Operation(summary = "import CSV", description = "Import rentals from CSV")
+    @ApiResponse( responseCode = "400", content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(implementation = EmptyResponse.class)
+    ))
+    @PostMapping(
+            path = "/import",
+            consumes = TEXT_CSV_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ImportRentalsResponse importCsv(InputStream body, Principal principal)
+            throws InvalidCredentialsException, BadRequestException {
+
+        try {
+            return rentalImportService.importCsv(body, authenticatedUser(principal));
+        } catch (IOException ex) {
+            log.error("Rentals import interrupted : " + ex.getMessage());
+            throw new BadRequestException();
+        }
+    }
 }
@@ -13,6 +13,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+import java.util.Optional;
 
 /**
  * User REST controller
@@ -38,6 +42,7 @@ public class UserController {
     /**
      * Get user route
      * @param id User id
+     * @param webRequest WebRequest
      * @return UserResponse
      * @throws InvalidCredentialsException InvalidCredentialsException
      */
@@ -51,11 +56,17 @@ public class UserController {
             mediaType = "application/json",
             schema = @Schema(implementation = EmptyResponse.class)
     ))
+    @ApiResponse( responseCode = "304")
     @GetMapping(
             path = "/{id}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public UserResponse getUser(@PathVariable int id) throws InvalidCredentialsException {
+    public UserResponse getUser(@PathVariable int id, WebRequest webRequest) throws InvalidCredentialsException {
+
+        Optional<Instant> version = userService.getUserVersion(id);
+        if (version.isPresent() && webRequest.checkNotModified(ETags.of("user", id, version.get()))) {
+            return null;
+        }
 
         return userService.getUser(id).map(user -> conversionService.convert(user, UserResponse.class))
                 .orElseThrow(InvalidCredentialsException::new);
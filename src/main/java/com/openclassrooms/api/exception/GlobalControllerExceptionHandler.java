@@ -11,6 +11,8 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Global Controller for Exception handling
  */
@@ -46,6 +48,20 @@ public class GlobalControllerExceptionHandler {
         return ex.getMessage() == null ? new EmptyResponse() : new MessageResponse(ex.getMessage());
     }
 
+    /**
+     * handler for error 422, when an idempotency key is reused for another request
+     *
+     * @param ex IdempotencyKeyReusedException
+     * @return MessageResponse
+     */
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    @Hidden
+    MessageResponse handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+        log.error("Error 422 - Unprocessable Entity - " + ex.getMessage());
+        return new MessageResponse(ex.getMessage());
+    }
+
     /**
      * handler for MaxUploadSizeExceededException
      *
@@ -59,4 +75,18 @@ public class GlobalControllerExceptionHandler {
         log.error("File too large - " + ex.getMessage());
         return new EmptyResponse();
     }
+
+    /**
+     * handler for error 503, when a bounded executor queue is full
+     *
+     * @param ex RejectedExecutionException
+     * @return EmptyResponse
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @Hidden
+    EmptyResponse handleRejectedExecution(RejectedExecutionException ex) {
+        log.error("Error 503 - Service Unavailable - " + ex.getMessage());
+        return new EmptyResponse();
+    }
 }
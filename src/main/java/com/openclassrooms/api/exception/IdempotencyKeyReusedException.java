@@ -0,0 +1,16 @@
+package com.openclassrooms.api.exception;
+
+/**
+ * Error 422, when an idempotency key is sent again with another request
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    /**
+     * Constructor for IdempotencyKeyReusedException class
+     *
+     * @param message String
+     */
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
@@ -18,7 +18,12 @@ import java.time.Instant;
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "MESSAGES")
+@Table(
+        name = "MESSAGES",
+        indexes = {
+                @Index(name = "IDX_MESSAGES_RENTAL_CREATED_AT_ID", columnList = "rental_id, created_at, id")
+        }
+)
 public class Message {
 
     @Id
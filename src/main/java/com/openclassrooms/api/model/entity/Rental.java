@@ -19,9 +19,22 @@ import java.time.Instant;
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "RENTALS")
+@Table(
+        name = "RENTALS",
+        indexes = {
+                @Index(name = "IDX_RENTALS_CREATED_AT_ID", columnList = "created_at, id"),
+                @Index(name = "IDX_RENTALS_PRICE_ID", columnList = "price, id"),
+                @Index(name = "IDX_RENTALS_SURFACE_ID", columnList = "surface, id"),
+                @Index(name = "IDX_RENTALS_UPDATED_AT", columnList = "updated_at"),
+                @Index(name = "IDX_RENTALS_OWNER_CREATED_AT_ID", columnList = "owner_id, created_at, id")
+        }
+)
 public class Rental {
 
+    /**
+     * Generated by the database. Bulk imports do not go through Hibernate, which cannot batch
+     * IDENTITY inserts : RentalImportService uses JDBC batches, rewritten by MySQL into multi-row inserts
+     */
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
@@ -0,0 +1,35 @@
+package com.openclassrooms.api.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * RevokedToken entity
+ * ID of an access token revoked before its expiration.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "REVOKED_TOKENS", indexes = {
+        @Index(name = "IDX_REVOKED_TOKENS_REVOKED_AT", columnList = "revoked_at"),
+        @Index(name = "IDX_REVOKED_TOKENS_EXPIRES_AT", columnList = "expires_at")
+})
+public class RevokedToken {
+
+    @Id
+    @Column(name = "token_id", length = 36)
+    private String tokenId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "revoked_at", nullable = false)
+    private Instant revokedAt;
+}
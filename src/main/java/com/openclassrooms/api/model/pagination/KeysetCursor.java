@@ -0,0 +1,58 @@
+package com.openclassrooms.api.model.pagination;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Keyset cursor
+ * Position of the last row of a page : the sort it was built for, then the values of its sort keys.
+ *
+ * @param sort sort the cursor was built for
+ * @param keys values of sort keys of the last row, ID last
+ */
+public record KeysetCursor(String sort, List<String> keys) {
+
+    private static final String SEPARATOR = "|";
+    private static final Pattern SPLITTER = Pattern.compile(Pattern.quote(SEPARATOR));
+
+    /**
+     * Constructor for KeysetCursor record
+     *
+     * @param sort sort the cursor was built for
+     * @param keys values of sort keys of the last row, ID last
+     */
+    public KeysetCursor {
+        keys = List.copyOf(keys);
+    }
+
+    /**
+     * Encode cursor as an opaque token
+     *
+     * @return String
+     */
+    public String encode() {
+        String raw = sort + SEPARATOR + String.join(SEPARATOR, keys);
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode an opaque token
+     *
+     * @param token String
+     * @return KeysetCursor
+     * @throws IllegalArgumentException if token is not a valid cursor
+     */
+    public static KeysetCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = SPLITTER.split(raw, -1);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Invalid cursor : " + token);
+        }
+        return new KeysetCursor(parts[0], Arrays.asList(parts).subList(1, parts.length));
+    }
+}
@@ -0,0 +1,22 @@
+package com.openclassrooms.api.model.request.auth;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * RefreshRequest DTO
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshRequest {
+
+    @NotBlank
+    @JsonProperty(value = "refresh_token")
+    private String refreshToken;
+}
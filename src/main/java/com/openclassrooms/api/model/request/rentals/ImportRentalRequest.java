@@ -0,0 +1,31 @@
+package com.openclassrooms.api.model.request.rentals;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+
+import java.math.BigDecimal;
+
+/**
+ * ImportRentalRequest DTO
+ * One row of a rentals import, picture being an URL or the name of an already stored image
+ *
+ * @param name Rental name
+ * @param surface Rental surface
+ * @param price Rental price
+ * @param picture picture URL, or stored image filename
+ * @param description Rental description
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ImportRentalRequest(
+        @NotBlank @Size(max = 255) String name,
+        @NotNull @Positive @Digits(integer = 10, fraction = 0) BigDecimal surface,
+        @NotNull @PositiveOrZero @Digits(integer = 10, fraction = 2) BigDecimal price,
+        @NotBlank @Size(max = 255) String picture,
+        @NotNull @Size(max = 2000) String description
+) {
+}
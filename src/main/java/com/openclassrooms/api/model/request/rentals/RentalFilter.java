@@ -0,0 +1,27 @@
+package com.openclassrooms.api.model.request.rentals;
+
+import java.math.BigDecimal;
+
+/**
+ * RentalFilter
+ * Optional bounds on rentals listing, null meaning unbounded
+ *
+ * @param minPrice min price, inclusive
+ * @param maxPrice max price, inclusive
+ * @param minSurface min surface, inclusive
+ * @param maxSurface max surface, inclusive
+ * @param ownerId owner ID
+ */
+public record RentalFilter(
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        BigDecimal minSurface,
+        BigDecimal maxSurface,
+        Integer ownerId
+) {
+
+    /**
+     * No filter
+     */
+    public static final RentalFilter NONE = new RentalFilter(null, null, null, null, null);
+}
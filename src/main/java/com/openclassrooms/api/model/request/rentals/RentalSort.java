@@ -0,0 +1,192 @@
+package com.openclassrooms.api.model.request.rentals;
+
+import com.openclassrooms.api.model.pagination.KeysetCursor;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * RentalSort
+ * Sort of rentals listing, parsed from a "price,-surface" like parameter.
+ * Rental ID is always the last sort key, in the direction of the last of the orders (ascending when there is none),
+ * so that the index on the sorted column and ID is read in a single direction.
+ *
+ * @param orders sort keys, ID excluded
+ */
+public record RentalSort(List<Order> orders) {
+
+    /**
+     * Sort by creation date
+     */
+    public static final RentalSort DEFAULT = new RentalSort(List.of(new Order(Field.CREATED_AT, false)));
+
+    private static final String DESCENDING = "-";
+
+    /**
+     * Constructor for RentalSort record
+     *
+     * @param orders sort keys, ID excluded
+     */
+    public RentalSort {
+        orders = List.copyOf(orders);
+    }
+
+    /**
+     * Parse a sort parameter
+     *
+     * @param sort comma separated fields, prefixed by "-" for descending order, null for default sort
+     * @return RentalSort
+     * @throws IllegalArgumentException if a field is unknown or repeated
+     */
+    public static RentalSort parse(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return DEFAULT;
+        }
+
+        List<Order> orders = new ArrayList<>();
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+        for (String param : sort.split(",")) {
+            String name = param.trim();
+            boolean descending = name.startsWith(DESCENDING);
+            Field field = Field.of(descending ? name.substring(1) : name);
+            if (!fields.add(field)) {
+                throw new IllegalArgumentException("Sort field repeated : " + field.getParam());
+            }
+            orders.add(new Order(field, descending));
+        }
+        return new RentalSort(orders);
+    }
+
+    /**
+     * Format sort as a parameter
+     *
+     * @return String
+     */
+    public String format() {
+        return orders.stream()
+                .map(order -> (order.descending() ? DESCENDING : "") + order.field().getParam())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Values of sort keys held by a cursor, ID last
+     *
+     * @param cursor KeysetCursor
+     * @return List of sort keys values
+     * @throws IllegalArgumentException if cursor was built for another sort, or holds invalid values
+     */
+    public List<Comparable<?>> keysOf(KeysetCursor cursor) {
+        if (!format().equals(cursor.sort()) || cursor.keys().size() != orders.size() + 1) {
+            throw new IllegalArgumentException("Cursor does not match sort " + format());
+        }
+
+        List<Comparable<?>> keys = new ArrayList<>();
+        try {
+            for (int i = 0; i < orders.size(); i++) {
+                keys.add(orders.get(i).field().parse(cursor.keys().get(i)));
+            }
+            keys.add(Integer.valueOf(cursor.keys().get(orders.size())));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid cursor values : " + cursor.keys(), ex);
+        }
+        return keys;
+    }
+
+    /**
+     * Sort key
+     *
+     * @param field sorted field
+     * @param descending true for descending order
+     */
+    public record Order(Field field, boolean descending) {
+    }
+
+    /**
+     * Sortable fields
+     */
+    public enum Field {
+        PRICE("price", "price", RentalResponse::price, BigDecimal::toPlainString, BigDecimal::new),
+        SURFACE("surface", "surface", RentalResponse::surface, BigDecimal::toPlainString, BigDecimal::new),
+        CREATED_AT("created_at", "createdAt", RentalResponse::createdAt, Instant::toString, Instant::parse);
+
+        private final String param;
+        private final String attribute;
+        private final Function<RentalResponse, String> formatter;
+        private final Function<String, Comparable<?>> parser;
+
+        <T extends Comparable<? super T>> Field(
+                String param,
+                String attribute,
+                Function<RentalResponse, T> getter,
+                Function<T, String> formatter,
+                Function<String, T> parser
+        ) {
+            this.param = param;
+            this.attribute = attribute;
+            this.formatter = getter.andThen(formatter);
+            this.parser = parser::apply;
+        }
+
+        /**
+         * Field by parameter name
+         *
+         * @param param parameter name
+         * @return Field
+         * @throws IllegalArgumentException if field is unknown
+         */
+        public static Field of(String param) {
+            for (Field field : values()) {
+                if (field.param.equals(param)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort field : " + param);
+        }
+
+        /**
+         * Parameter name
+         *
+         * @return String
+         */
+        public String getParam() {
+            return param;
+        }
+
+        /**
+         * Rental entity attribute
+         *
+         * @return String
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Format field value of a rental, for a cursor
+         *
+         * @param rental RentalResponse
+         * @return String
+         */
+        public String format(RentalResponse rental) {
+            return formatter.apply(rental);
+        }
+
+        /**
+         * Parse field value from a cursor
+         *
+         * @param value String
+         * @return Comparable
+         * @throws RuntimeException if value is invalid
+         */
+        public Comparable<?> parse(String value) {
+            return parser.apply(value);
+        }
+    }
+}
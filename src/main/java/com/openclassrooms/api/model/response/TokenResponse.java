@@ -1,5 +1,7 @@
 package com.openclassrooms.api.model.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,4 +15,8 @@ import lombok.NoArgsConstructor;
 public class TokenResponse implements Response {
 
     private String token;
+
+    @JsonProperty(value = "refresh_token")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String refreshToken;
 }
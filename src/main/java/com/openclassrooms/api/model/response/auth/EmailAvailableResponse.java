@@ -0,0 +1,17 @@
+package com.openclassrooms.api.model.response.auth;
+
+import com.openclassrooms.api.model.response.Response;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * EmailAvailableResponse DTO
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailAvailableResponse implements Response {
+
+    private boolean available;
+}
@@ -0,0 +1,30 @@
+package com.openclassrooms.api.model.response.message;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.openclassrooms.api.model.response.Response;
+import lombok.Builder;
+
+import java.time.Instant;
+
+/**
+ * InboxMessageResponse DTO
+ * Immutable, so it can be selected straight from the database by MessageRepository projections
+ */
+@Builder
+public record InboxMessageResponse(
+
+    int id,
+
+    @JsonProperty(value = "rental_id")
+    int rentalId,
+
+    @JsonProperty(value = "user_id")
+    int userId,
+
+    String message,
+
+    @JsonProperty(value = "created_at")
+    Instant createdAt
+
+) implements Response {
+}
@@ -0,0 +1,23 @@
+package com.openclassrooms.api.model.response.message;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.openclassrooms.api.model.response.Response;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * InboxResponse DTO
+ */
+@Data
+@Builder
+public class InboxResponse implements Response {
+
+    List<InboxMessageResponse> messages;
+
+    @JsonProperty(value = "next_cursor")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+}
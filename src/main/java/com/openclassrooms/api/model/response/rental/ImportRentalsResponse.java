@@ -0,0 +1,31 @@
+package com.openclassrooms.api.model.response.rental;
+
+import com.openclassrooms.api.model.response.Response;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * ImportRentalsResponse DTO
+ * Counts of imported and rejected rows, with the first rejected rows only, so that its size does not grow with the input.
+ */
+@Data
+@Builder
+public class ImportRentalsResponse implements Response {
+
+    private int imported;
+
+    private int rejected;
+
+    private List<Row> errors;
+
+    /**
+     * Rejected row
+     *
+     * @param line line number in imported input
+     * @param error rejection reason
+     */
+    public record Row(long line, String error) {
+    }
+}
@@ -5,32 +5,31 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.openclassrooms.api.model.response.Response;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Builder;
-import lombok.Data;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 
 /**
  * RentalResponse DTO
+ * Immutable, so it can be selected straight from the database by RentalRepository projections
  */
-@Data
 @Builder
-public class RentalResponse implements Response {
+public record RentalResponse(
 
-    private int id;
+    int id,
 
-    private String name;
+    String name,
 
-    private BigDecimal surface;
+    BigDecimal surface,
 
-    private BigDecimal price;
+    BigDecimal price,
 
-    private String picture;
+    String picture,
 
-    private String description;
+    String description,
 
     @JsonProperty(value = "owner_id")
-    private int ownerId;
+    int ownerId,
 
     @JsonProperty(value = "created_at")
     @JsonFormat(pattern = "yyyy/MM/dd", timezone = "UTC")
@@ -39,7 +38,7 @@ public class RentalResponse implements Response {
             example = "1970/01/01",
             pattern = "yyyy/MM/dd"
     )
-    private Instant createdAt;
+    Instant createdAt,
 
     @JsonProperty(value = "updated_at")
     @JsonFormat(pattern = "yyyy/MM/dd", timezone = "UTC")
@@ -48,6 +47,7 @@ public class RentalResponse implements Response {
             example = "2023/02/03",
             pattern = "yyyy/MM/dd"
     )
-    private Instant updatedAt;
+    Instant updatedAt
 
-}
\ No newline at end of file
+) implements Response {
+}
@@ -1,5 +1,7 @@
 package com.openclassrooms.api.model.response.rental;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.openclassrooms.api.model.response.Response;
 import lombok.Builder;
 import lombok.Data;
@@ -14,4 +16,8 @@ import java.util.List;
 public class RentalsResponse implements Response {
 
     List<RentalResponse> rentals;
+
+    @JsonProperty(value = "next_cursor")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 }
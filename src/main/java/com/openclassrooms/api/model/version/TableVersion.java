@@ -0,0 +1,13 @@
+package com.openclassrooms.api.model.version;
+
+import java.time.Instant;
+
+/**
+ * Version of a whole table : last update date and rows count.
+ * Changes whenever a row is inserted, updated or deleted.
+ *
+ * @param lastUpdatedAt max(updated_at), null if table is empty
+ * @param count rows count
+ */
+public record TableVersion(Instant lastUpdatedAt, long count) {
+}
@@ -1,10 +1,114 @@
 package com.openclassrooms.api.repository;
 
 import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
 
 /**
  * Message repository
+ * Read methods select straight into InboxMessageResponse records, newest first, and pages are read by seeking
+ * after the last row of previous page : IDX_MESSAGES_RENTAL_CREATED_AT_ID serves both the filter and the sort.
+ * Inbox goes through the rentals of an owner, found with IDX_RENTALS_OWNER_CREATED_AT_ID.
  */
 public interface MessageRepository extends CrudRepository<Message, Integer> {
+
+    /**
+     * Select clause of InboxMessageResponse projections
+     */
+    String SELECT_RESPONSE = """
+            SELECT new com.openclassrooms.api.model.response.message.InboxMessageResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt
+            )
+            FROM Message m
+            """;
+
+    /**
+     * Rows before the last row of previous page, newest first.
+     * The leading range condition lets the database seek in the index.
+     */
+    String SEEK = """
+            AND m.createdAt <= :createdAt
+            AND (m.createdAt < :createdAt OR m.id < :id)
+            """;
+
+    /**
+     * Newest first order
+     */
+    String ORDER_BY = "ORDER BY m.createdAt DESC, m.id DESC";
+
+    /**
+     * First page of messages about a rental
+     *
+     * @param rentalId Rental ID
+     * @param pageable page size
+     * @return Slice of InboxMessageResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE m.rental.id = :rentalId " + ORDER_BY)
+    Slice<InboxMessageResponse> findRentalPage(@Param("rentalId") int rentalId, Pageable pageable);
+
+    /**
+     * Next page of messages about a rental
+     *
+     * @param rentalId Rental ID
+     * @param createdAt creation date of the last message of previous page
+     * @param id ID of the last message of previous page
+     * @param pageable page size
+     * @return Slice of InboxMessageResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE m.rental.id = :rentalId " + SEEK + ORDER_BY)
+    Slice<InboxMessageResponse> findRentalPageAfter(
+            @Param("rentalId") int rentalId,
+            @Param("createdAt") Instant createdAt,
+            @Param("id") int id,
+            Pageable pageable
+    );
+
+    /**
+     * First page of messages about the rentals of an owner
+     *
+     * @param ownerId owner ID
+     * @param pageable page size
+     * @return Slice of InboxMessageResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE m.rental.owner.id = :ownerId " + ORDER_BY)
+    Slice<InboxMessageResponse> findInboxPage(@Param("ownerId") int ownerId, Pageable pageable);
+
+    /**
+     * Next page of messages about the rentals of an owner
+     *
+     * @param ownerId owner ID
+     * @param createdAt creation date of the last message of previous page
+     * @param id ID of the last message of previous page
+     * @param pageable page size
+     * @return Slice of InboxMessageResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE m.rental.owner.id = :ownerId " + SEEK + ORDER_BY)
+    Slice<InboxMessageResponse> findInboxPageAfter(
+            @Param("ownerId") int ownerId,
+            @Param("createdAt") Instant createdAt,
+            @Param("id") int id,
+            Pageable pageable
+    );
+
+    /**
+     * Messages about the rentals of an owner sent after a message, oldest first
+     *
+     * @param ownerId owner ID
+     * @param id ID of the last message received
+     * @param pageable max number of messages
+     * @return List of InboxMessageResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE m.rental.owner.id = :ownerId AND m.id > :id ORDER BY m.id")
+    List<InboxMessageResponse> findInboxAfterId(
+            @Param("ownerId") int ownerId,
+            @Param("id") int id,
+            Pageable pageable
+    );
 }
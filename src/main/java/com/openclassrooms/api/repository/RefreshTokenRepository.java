@@ -0,0 +1,58 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.entity.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * RefreshToken repository
+ */
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Find refresh token by its digest
+     *
+     * @param tokenHash token digest
+     * @return Optional RefreshToken
+     */
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Revoke a refresh token, unless it is already revoked
+     *
+     * @param id RefreshToken ID
+     * @param now revocation date
+     * @return 1 if token was revoked by this call, 0 otherwise
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revokedAt = :now WHERE r.id = :id AND r.revokedAt IS NULL")
+    int revoke(@Param("id") long id, @Param("now") Instant now);
+
+    /**
+     * Revoke every refresh token of a user
+     *
+     * @param userId User ID
+     * @param now revocation date
+     * @return number of revoked tokens
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revokedAt = :now WHERE r.user.id = :userId AND r.revokedAt IS NULL")
+    int revokeAllOfUser(@Param("userId") int userId, @Param("now") Instant now);
+
+    /**
+     * Delete expired refresh tokens
+     *
+     * @param now current date
+     * @return number of deleted tokens
+     */
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -1,12 +1,78 @@
 package com.openclassrooms.api.repository;
 
 import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.model.version.TableVersion;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 /**
  * Rental repository
+ * Read methods select straight into RentalResponse records : no managed entity, no owner proxy,
+ * owner ID is read from the owner_id foreign key column.
  */
 @Repository
-public interface RentalRepository extends JpaRepository<Rental, Integer> {
+public interface RentalRepository extends JpaRepository<Rental, Integer>, RentalRepositoryCustom {
+
+    /**
+     * Number of rows fetched per round trip when streaming rentals
+     */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * Select clause of RentalResponse projections
+     */
+    String SELECT_RESPONSE = """
+            SELECT new com.openclassrooms.api.model.response.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, r.picture, r.description, r.owner.id, r.createdAt, r.updatedAt
+            )
+            FROM Rental r
+            """;
+
+    /**
+     * Find a rental by ID
+     *
+     * @param id Rental ID
+     * @return Optional RentalResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE r.id = :id")
+    Optional<RentalResponse> findResponseById(@Param("id") int id);
+
+    /**
+     * Find rentals by IDs, in no particular order
+     *
+     * @param ids Rental IDs
+     * @return List of RentalResponse
+     */
+    @Query(SELECT_RESPONSE + "WHERE r.id IN :ids")
+    List<RentalResponse> findResponsesByIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Version of rentals table : last update date and rentals count
+     *
+     * @return TableVersion
+     */
+    @Query("SELECT new com.openclassrooms.api.model.version.TableVersion(MAX(r.updatedAt), COUNT(r)) FROM Rental r")
+    TableVersion findVersion();
+
+    /**
+     * Stream all rentals, ordered by creation date then ID.
+     * Rows are read through a forward-only cursor, STREAM_FETCH_SIZE rows at a time.
+     * Must be called inside a transaction, and the stream must be closed.
+     *
+     * @return Stream of RentalResponse
+     */
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_RESPONSE + "ORDER BY r.createdAt ASC, r.id ASC")
+    Stream<RentalResponse> streamAll();
 }
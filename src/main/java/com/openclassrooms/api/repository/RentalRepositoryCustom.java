@@ -0,0 +1,26 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+/**
+ * Rental repository queries built at runtime
+ */
+public interface RentalRepositoryCustom {
+
+    /**
+     * Page of rentals matching a filter, in a given sort, seeking after the last row of previous page.
+     * Rentals without a value for a sort field are left out.
+     *
+     * @param filter RentalFilter
+     * @param sort RentalSort
+     * @param after sort keys values of the last row of previous page, ID last, null for first page
+     * @param size page size
+     * @return Slice of RentalResponse
+     */
+    Slice<RentalResponse> findPage(RentalFilter filter, RentalSort sort, List<Comparable<?>> after, int size);
+}
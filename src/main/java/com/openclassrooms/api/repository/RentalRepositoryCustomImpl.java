@@ -0,0 +1,188 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rental repository queries built at runtime.
+ * Filters are plain equality and range conditions, and pages are read by seeking after the last row of previous page,
+ * so that a composite index on (sort field, id), or (owner, sort field, id), serves both the filter and the sort.
+ */
+public class RentalRepositoryCustomImpl implements RentalRepositoryCustom {
+    private static final String ID = "id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Page of rentals matching a filter, in a given sort, seeking after the last row of previous page.
+     * Rentals without a value for a sort field are left out.
+     *
+     * @param filter RentalFilter
+     * @param sort RentalSort
+     * @param after sort keys values of the last row of previous page, ID last, null for first page
+     * @param size page size
+     * @return Slice of RentalResponse
+     */
+    @Override
+    public Slice<RentalResponse> findPage(RentalFilter filter, RentalSort sort, List<Comparable<?>> after, int size) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<RentalResponse> query = cb.createQuery(RentalResponse.class);
+        Root<Rental> r = query.from(Rental.class);
+
+        query.select(cb.construct(
+                RentalResponse.class,
+                r.get(ID),
+                r.get("name"),
+                r.get("surface"),
+                r.get("price"),
+                r.get("picture"),
+                r.get("description"),
+                r.get("owner").get(ID),
+                r.get("createdAt"),
+                r.get("updatedAt")
+        ));
+
+        List<Predicate> where = new ArrayList<>();
+        addRange(cb, where, r.get("price"), filter.minPrice(), filter.maxPrice());
+        addRange(cb, where, r.get("surface"), filter.minSurface(), filter.maxSurface());
+        if (filter.ownerId() != null) {
+            where.add(cb.equal(r.get("owner").get(ID), filter.ownerId()));
+        }
+        sort.orders().forEach(order -> where.add(cb.isNotNull(r.get(order.field().getAttribute()))));
+        if (after != null) {
+            where.add(seek(cb, r, sort, after));
+        }
+        query.where(where.toArray(Predicate[]::new));
+
+        // ID breaks ties, in the direction of the last sort key, so a single key sort is a plain index scan
+        List<Order> orderBy = new ArrayList<>();
+        sort.orders().forEach(order -> orderBy.add(order(cb, r.get(order.field().getAttribute()), order.descending())));
+        orderBy.add(order(cb, r.get(ID), idDescending(sort)));
+        query.orderBy(orderBy);
+
+        // One more row tells whether there is a next page
+        List<RentalResponse> rows = entityManager.createQuery(query)
+                .setMaxResults(size + 1)
+                .getResultList();
+        boolean hasNext = rows.size() > size;
+        return new SliceImpl<>(hasNext ? rows.subList(0, size) : rows, PageRequest.ofSize(size), hasNext);
+    }
+
+    /**
+     * Add inclusive range conditions on a field
+     *
+     * @param cb CriteriaBuilder
+     * @param where predicates
+     * @param field filtered field
+     * @param min lower bound, null for none
+     * @param max upper bound, null for none
+     */
+    private static void addRange(
+            CriteriaBuilder cb,
+            List<Predicate> where,
+            Expression<BigDecimal> field,
+            BigDecimal min,
+            BigDecimal max
+    ) {
+        if (min != null) {
+            where.add(cb.greaterThanOrEqualTo(field, min));
+        }
+        if (max != null) {
+            where.add(cb.lessThanOrEqualTo(field, max));
+        }
+    }
+
+    /**
+     * Rows after the position of the last row of previous page, in sort order.
+     * The leading range condition on the first sort key lets the database seek in the index,
+     * the disjunction then skips rows equal to that position on its first keys.
+     *
+     * @param cb CriteriaBuilder
+     * @param r Rental root
+     * @param sort RentalSort
+     * @param after sort keys values of the last row of previous page, ID last
+     * @return Predicate
+     */
+    private static Predicate seek(CriteriaBuilder cb, Root<Rental> r, RentalSort sort, List<Comparable<?>> after) {
+
+        List<Expression<Comparable<Object>>> paths = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        sort.orders().forEach(order -> {
+            paths.add(r.get(order.field().getAttribute()));
+            descending.add(order.descending());
+        });
+        paths.add(r.get(ID));
+        descending.add(idDescending(sort));
+
+        List<Comparable<Object>> values = after.stream().map(RentalRepositoryCustomImpl::comparable).toList();
+
+        // (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ... OR (k1 = v1 AND ... AND id > vid)
+        List<Predicate> disjunction = new ArrayList<>();
+        List<Predicate> equalities = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            List<Predicate> conjunction = new ArrayList<>(equalities);
+            conjunction.add(descending.get(i)
+                    ? cb.lessThan(paths.get(i), values.get(i))
+                    : cb.greaterThan(paths.get(i), values.get(i)));
+            disjunction.add(cb.and(conjunction.toArray(Predicate[]::new)));
+            equalities.add(cb.equal(paths.get(i), values.get(i)));
+        }
+
+        Predicate leading = descending.get(0)
+                ? cb.lessThanOrEqualTo(paths.get(0), values.get(0))
+                : cb.greaterThanOrEqualTo(paths.get(0), values.get(0));
+        return cb.and(leading, cb.or(disjunction.toArray(Predicate[]::new)));
+    }
+
+    /**
+     * Whether ID tiebreak is descending : same direction as the last sort key
+     *
+     * @param sort RentalSort
+     * @return boolean
+     */
+    private static boolean idDescending(RentalSort sort) {
+        return !sort.orders().isEmpty() && sort.orders().get(sort.orders().size() - 1).descending();
+    }
+
+    /**
+     * Sort order on an expression
+     *
+     * @param cb CriteriaBuilder
+     * @param expression sorted expression
+     * @param descending true for descending order
+     * @return Order
+     */
+    private static Order order(CriteriaBuilder cb, Expression<?> expression, boolean descending) {
+        return descending ? cb.desc(expression) : cb.asc(expression);
+    }
+
+    /**
+     * Sort key value as a comparable of any type, to compare it with its path
+     *
+     * @param value sort key value
+     * @return Comparable
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(Comparable<?> value) {
+        return (Comparable<Object>) value;
+    }
+}
@@ -0,0 +1,38 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * RevokedToken repository
+ */
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Find tokens revoked since a date, and not expired yet
+     *
+     * @param since revocation date, exclusive
+     * @param now current date
+     * @return List of RevokedToken
+     */
+    @Query("SELECT r FROM RevokedToken r WHERE r.revokedAt > :since AND r.expiresAt > :now ORDER BY r.revokedAt")
+    List<RevokedToken> findRevokedSince(@Param("since") Instant since, @Param("now") Instant now);
+
+    /**
+     * Delete expired tokens : they are rejected anyway
+     *
+     * @param now current date
+     * @return number of deleted tokens
+     */
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
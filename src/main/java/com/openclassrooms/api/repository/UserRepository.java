@@ -1,10 +1,17 @@
 package com.openclassrooms.api.repository;
 
 import com.openclassrooms.api.model.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * User repository
@@ -21,11 +28,21 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
 
     /**
-     * Check user existence
+     * Stream emails of every user
      *
-     * @param email user email
-     * @return boolean
+     * @return Stream of emails, to close once read
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT u.email FROM User u")
+    Stream<String> streamAllEmails();
+
+    /**
+     * Find last update date of a user, without loading it
+     *
+     * @param id user ID
+     * @return Optional Instant
      */
-    boolean existsByEmail(String email);
+    @Query("SELECT u.updatedAt FROM User u WHERE u.id = :id")
+    Optional<Instant> findUpdatedAtById(@Param("id") int id);
 
 }
@@ -1,20 +1,25 @@
 package com.openclassrooms.api.service;
 
+import com.openclassrooms.api.configuration.jwt.JwtPrincipal;
 import com.openclassrooms.api.configuration.jwt.JwtService;
 import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.response.TokenResponse;
 import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.message.MessageStreams;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.AuthenticationException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Authentification service
@@ -24,97 +29,230 @@ import java.util.*;
 @Service
 public class AuthentificationService {
 
-    private AuthenticationManager authManager;
     private JwtService jwtService;
     private PasswordEncoder passwordEncoder;
     private UserRepository userRepository;
     private UserDetailsService userDetailsService;
+    private PasswordHashingService passwordHashingService;
+    private UserService userService;
+    private EmailAvailabilityService emailAvailabilityService;
+    private RefreshTokenService refreshTokenService;
+    private TokenRevocationService tokenRevocationService;
+    private MessageStreams messageStreams;
+    private UserDetailsPasswordService userDetailsPasswordService;
+    private Executor taskExecutor;
+    private volatile String unknownUserHash;
 
     /**
      * Constructor for AuthentificationService class
      *
-     * @param authManager AuthenticationManager
      * @param jwtService JwtService
      * @param passwordEncoder PasswordEncoder
      * @param userRepository UserRepository
+     * @param passwordHashingService PasswordHashingService
+     * @param userService UserService
+     * @param emailAvailabilityService EmailAvailabilityService
+     * @param refreshTokenService RefreshTokenService
+     * @param tokenRevocationService TokenRevocationService
+     * @param messageStreams MessageStreams
+     * @param userDetailsPasswordService UserDetailsPasswordService
+     * @param taskExecutor application task executor, for database work following password hashing
      */
     @Autowired
     AuthentificationService(
-            AuthenticationManager authManager,
             JwtService jwtService,
             PasswordEncoder passwordEncoder,
-            UserRepository userRepository
+            UserRepository userRepository,
+            PasswordHashingService passwordHashingService,
+            UserService userService,
+            EmailAvailabilityService emailAvailabilityService,
+            RefreshTokenService refreshTokenService,
+            TokenRevocationService tokenRevocationService,
+            MessageStreams messageStreams,
+            UserDetailsPasswordService userDetailsPasswordService,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor taskExecutor
     ) {
-        this.authManager = authManager;
         this.jwtService = jwtService;
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
+        this.passwordHashingService = passwordHashingService;
+        this.userService = userService;
+        this.emailAvailabilityService = emailAvailabilityService;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.messageStreams = messageStreams;
+        this.userDetailsPasswordService = userDetailsPasswordService;
+        this.taskExecutor = taskExecutor;
     }
 
     /**
      * Register a new user
+     * Password is hashed on password hashing threads, user is then saved on application task threads.
+     * User is inserted in a single statement : unique email constraint rejects existing users,
+     * once their password is hashed, so a signup with an existing email costs a full hash too.
      *
      * @param email user email
      * @param name username
      * @param password user password
-     * @return Optional token
+     * @return CompletableFuture of Optional tokens, empty if user exists
+     * @throws java.util.concurrent.RejectedExecutionException if password hashing is saturated
      */
-    public Optional<String> registerUser(String email, String name, String password) {
+    public CompletableFuture<Optional<TokenResponse>> registerUser(String email, String name, String password) {
 
-        // If user exists, stop registration, do not return a token
-        if (userRepository.existsByEmail(email)) {
-            return Optional.empty();
-        }
+        return passwordHashingService.supplyAsync(() -> passwordEncoder.encode(password))
+                .thenApplyAsync(hash -> {
 
-        // If user doesn't exist, register it
+                    // Create new user
+                    User user = User.builder()
+                            .name(name)
+                            .email(email)
+                            .password(hash)
+                            .build();
 
-        // Create new user
-        User user = User.builder()
-                .name(name)
-                .email(email)
-                .password(passwordEncoder.encode(password))
-                .build();
+                    // Save user in db, if email is not already used
+                    try {
+                        userRepository.saveAndFlush(user);
+                    } catch (DataIntegrityViolationException ex) {
+                        // Expected on duplicate signups : neither the email nor the constraint message is logged
+                        log.info("User not registered : email already used");
+                        return Optional.empty();
+                    }
 
-        // Save user in db
-        userRepository.saveAndFlush(user);
+                    // Email may be cached as unknown, and is not available anymore
+                    userService.evictUser(email);
+                    emailAvailabilityService.addEmail(email);
 
-        // Return token
-        return Optional.of(jwtService.generateAccessToken(user));
+                    // Return tokens
+                    return Optional.of(issueTokens(user));
+                }, taskExecutor);
     }
 
     /**
      * Log in an existing user
+     * User is read from users cache, or database, on the calling thread.
+     * Password is verified on password hashing threads, and hashed again if its cost is not current BCrypt strength,
+     * then new hash and tokens are saved on application task threads.
      *
      * @param email user email
      * @param password user password
-     * @return Optional token
+     * @return CompletableFuture of Optional tokens
+     * @throws java.util.concurrent.RejectedExecutionException if password hashing is saturated
+     */
+    public CompletableFuture<Optional<TokenResponse>> loginUser(String email, String password) {
+        Optional<User> optUser = email == null ? Optional.empty() : authUser(email);
+
+        return passwordHashingService.supplyAsync(() -> verifyPassword(optUser, password))
+                .thenApplyAsync(optLogin -> optLogin.map(login -> {
+                    if (login.newHash() != null) {
+                        userDetailsPasswordService.updatePassword(login.user(), login.newHash());
+                    }
+                    return issueTokens(login.user());
+                }), taskExecutor);
+    }
+
+    /**
+     * Issue new tokens from a refresh token, used only once
+     *
+     * @param refreshToken refresh token
+     * @return Optional tokens, empty if refresh token is invalid, expired or already used
+     */
+    public Optional<TokenResponse> refresh(String refreshToken) {
+        return refreshTokenService.use(refreshToken).map(this::issueTokens);
+    }
+
+    /**
+     * Log out : revoke current access token, and refresh token if any,
+     * and close messages streams opened with this access token on this node.
+     * Streams opened on other nodes end when their access token expires.
+     *
+     * @param principal access token principal
+     * @param refreshToken refresh token, may be null
+     */
+    public void logout(JwtPrincipal principal, String refreshToken) {
+        tokenRevocationService.revoke(principal.tokenId(), principal.expiresAt());
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        messageStreams.close(principal.tokenId());
+    }
+
+    /**
+     * Verify a password, on password hashing threads
+     * Unknown users cost a full verification too : response time does not tell which emails are registered.
+     *
+     * @param optUser Optional user
+     * @param password submitted password
+     * @return Optional verified login, empty if credentials are invalid
      */
-    public Optional<String> loginUser(String email, String password) {
-
-        Authentication authentication;
-        try {
-            authentication = authManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(email, password)
-            );
-        } catch (AuthenticationException ex) {
-            log.error(ex.getMessage());
+    private Optional<Login> verifyPassword(Optional<User> optUser, String password) {
+        if (optUser.isEmpty()) {
+            passwordEncoder.matches(password, unknownUserHash());
+            log.error("Bad credentials");
             return Optional.empty();
         }
+        User user = optUser.get();
+        if (!passwordEncoder.matches(password, user.getPassword())) {
+            log.error("Bad credentials");
+            return Optional.empty();
+        }
+        String newHash = passwordEncoder.upgradeEncoding(user.getPassword()) ? passwordEncoder.encode(password) : null;
+        return Optional.of(new Login(user, newHash));
+    }
 
-        User user = (User) authentication.getPrincipal();
+    /**
+     * Hash compared with passwords of unknown users, computed once
+     *
+     * @return String
+     */
+    private String unknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null) {
+            hash = passwordEncoder.encode("unknown user password");
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
 
-        return Optional.of(jwtService.generateAccessToken(user));
+    /**
+     * Issue a short-lived access token, and a refresh token
+     *
+     * @param user User
+     * @return TokenResponse
+     */
+    private TokenResponse issueTokens(User user) {
+        return new TokenResponse(
+                jwtService.generateAccessToken(user),
+                refreshTokenService.issue(user.getId())
+        );
     }
 
     /**
-     * Return details of a given user
+     * Check if an email is not used by any user
+     *
+     * @param email email
+     * @return boolean
+     */
+    public boolean isEmailAvailable(String email) {
+        return emailAvailabilityService.isEmailAvailable(email);
+    }
+
+    /**
+     * Return details of a given user, from users cache
      *
      * @param email user email
-     * @return Optional User
+     * @return Optional User, copy of the cached user
      */
     public Optional<User> authUser(String email) {
 
-        return this.userRepository.findByEmail(email);
+        return this.userService.getUserByEmail(email).map(UserService.CachedUser::toUser);
     }
 
+    /**
+     * Verified login
+     *
+     * @param user User
+     * @param newHash password hashed again with current cost, null if unchanged
+     */
+    private record Login(User user, String newHash) {
+    }
 }
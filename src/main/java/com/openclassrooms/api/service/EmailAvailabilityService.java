@@ -0,0 +1,137 @@
+package com.openclassrooms.api.service;
+
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.bloom.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Email availability service
+ * Emails of users are kept in a Bloom filter : an email absent from the filter is free,
+ * without any database query. Only possible matches are checked in users cache and database.
+ */
+@Slf4j
+@Service
+public class EmailAvailabilityService {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final BloomFilter filter;
+    private final Counter definitelyFree;
+    private final Counter possiblyTaken;
+    private final Counter falsePositives;
+    private volatile boolean loaded;
+
+    /**
+     * Constructor for EmailAvailabilityService class
+     *
+     * @param userRepository UserRepository
+     * @param userService UserService
+     * @param meterRegistry MeterRegistry
+     * @param expectedInsertions expected number of users
+     * @param falsePositiveRate expected false positive rate, at expected number of users
+     */
+    public EmailAvailabilityService(
+            UserRepository userRepository,
+            UserService userService,
+            MeterRegistry meterRegistry,
+            @Value("${app.email-filter.expected-insertions}") long expectedInsertions,
+            @Value("${app.email-filter.false-positive-rate}") double falsePositiveRate
+    ) {
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+
+        // Observed false positive rate : false.positives / checks{result=possibly_taken}
+        this.definitelyFree = Counter.builder("email.filter.checks")
+                .tag("result", "definitely_free")
+                .register(meterRegistry);
+        this.possiblyTaken = Counter.builder("email.filter.checks")
+                .tag("result", "possibly_taken")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("email.filter.false.positives")
+                .description("Emails found in Bloom filter, but free")
+                .register(meterRegistry);
+        Gauge.builder("email.filter.memory", filter, BloomFilter::memoryBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("email.filter.insertions", filter, BloomFilter::insertions)
+                .register(meterRegistry);
+        Gauge.builder("email.filter.expected.false.positive.rate", filter, BloomFilter::expectedFalsePositiveRate)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Add emails of every user to the filter, once application is started.
+     * Until then, every email is checked in database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadEmails() {
+        try (Stream<String> emails = userRepository.streamAllEmails()) {
+            emails.forEach(this::addEmail);
+        }
+        loaded = true;
+        log.info("Email filter loaded : " + filter.insertions() + " emails, " + filter.memoryBytes() + " bytes");
+    }
+
+    /**
+     * Add email of a new user
+     *
+     * @param email user email
+     */
+    public void addEmail(String email) {
+        filter.put(normalize(email));
+    }
+
+    /**
+     * Check if an email is not used by any user
+     *
+     * @param email email
+     * @return boolean
+     */
+    public boolean isEmailAvailable(String email) {
+        if (loaded && !filter.mightContain(normalize(email))) {
+            definitelyFree.increment();
+            return true;
+        }
+
+        possiblyTaken.increment();
+        boolean available = userService.getUserByEmail(email).isEmpty();
+        if (available && loaded) {
+            falsePositives.increment();
+        }
+        return available;
+    }
+
+    /**
+     * Filter key of an email, at least as loose as the users email column collation (MySQL _ai_ci) :
+     * emails equal in database must have the same key, otherwise a taken email would be found free.
+     * Case, accents, compatibility forms (ligatures, full width letters), ß and surrounding spaces are ignored.
+     * Looser keys only add possible matches, which are checked in database.
+     * Collation equalities not covered here (a few contractions and ignorable characters) are still rejected
+     * by the unique constraint of the users email column on register.
+     *
+     * @param email email
+     * @return String
+     */
+    private static String normalize(String email) {
+        String decomposed = Normalizer.normalize(email.strip(), Normalizer.Form.NFKD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                .toUpperCase(Locale.ROOT)
+                .toLowerCase(Locale.ROOT);
+    }
+}
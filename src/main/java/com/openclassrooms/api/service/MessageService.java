@@ -1,15 +1,30 @@
 package com.openclassrooms.api.service;
 
+import com.openclassrooms.api.configuration.jwt.AuthenticatedUser;
 import com.openclassrooms.api.model.entity.Message;
-import com.openclassrooms.api.model.entity.Rental;
-import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.pagination.KeysetCursor;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.model.response.message.InboxResponse;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
 import com.openclassrooms.api.repository.MessageRepository;
 import com.openclassrooms.api.repository.RentalRepository;
 import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.message.MessageDurability;
+import com.openclassrooms.api.service.message.MessageStreams;
+import com.openclassrooms.api.service.message.MessageWriter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Message service
@@ -17,9 +32,16 @@ import java.util.Optional;
 @Slf4j
 @Service
 public class MessageService {
+    private static final String SORT = "-created_at";
+
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final RentalRepository rentalRepository;
+    private final MessageWriter messageWriter;
+    private final RentalService rentalService;
+    private final MessageStreams messageStreams;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
     /**
      * Constructor for MessageService class
@@ -27,15 +49,75 @@ public class MessageService {
      * @param messageRepository MessageRepository
      * @param userRepository UserRepository
      * @param rentalRepository RentalRepository
+     * @param messageWriter MessageWriter
+     * @param rentalService RentalService
+     * @param messageStreams MessageStreams
+     * @param defaultPageSize page size used when none is requested
+     * @param maxPageSize upper bound of requested page size
      */
-    public MessageService(MessageRepository messageRepository, UserRepository userRepository, RentalRepository rentalRepository) {
+    public MessageService(
+            MessageRepository messageRepository,
+            UserRepository userRepository,
+            RentalRepository rentalRepository,
+            MessageWriter messageWriter,
+            RentalService rentalService,
+            MessageStreams messageStreams,
+            @Value("${app.messages.page-size}") int defaultPageSize,
+            @Value("${app.messages.max-page-size}") int maxPageSize
+    ) {
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
         this.rentalRepository = rentalRepository;
+        this.messageWriter = messageWriter;
+        this.rentalService = rentalService;
+        this.messageStreams = messageStreams;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Send message to a user, written behind when enabled.
+     * Without write-behind, message is inserted on its own, and always acknowledged once committed.
+     * Once committed, message is pushed to the rental owner streams.
+     *
+     * @param messageBody String
+     * @param userId recipient iD
+     * @param rentalId associated rental
+     * @param durability requested acknowledgement point
+     * @return CompletableFuture of Optional durability reached, empty if user or rental does not exist
+     * @throws java.util.concurrent.RejectedExecutionException if messages queue is full
+     */
+    public CompletableFuture<Optional<MessageDurability>> sendMessage(
+            String messageBody,
+            int userId,
+            int rentalId,
+            MessageDurability durability
+    ) {
+
+        if (!messageWriter.isEnabled()) {
+            return CompletableFuture.completedFuture(
+                    sendMessage(messageBody, userId, rentalId)
+                            ? Optional.of(MessageDurability.COMMITTED)
+                            : Optional.empty()
+            );
+        }
+
+        CompletableFuture<Optional<MessageDurability>> committed = messageWriter.enqueue(messageBody, userId, rentalId)
+                .thenApply(optMessage -> {
+                    optMessage.ifPresent(messageStreams::publish);
+                    return optMessage.map(message -> MessageDurability.COMMITTED);
+                });
+        if (durability == MessageDurability.ENQUEUED) {
+            return CompletableFuture.completedFuture(Optional.of(MessageDurability.ENQUEUED));
+        }
+        return committed;
     }
 
     /**
      * Send message to a user
+     * User and rental are attached by their IDs, without being loaded :
+     * message is saved with a single insert, and MESSAGES foreign keys reject unknown IDs.
+     * Saved message is pushed to the rental owner streams.
      *
      * @param messageBody String
      * @param userId recipient iD
@@ -44,25 +126,158 @@ public class MessageService {
      */
     public boolean sendMessage(String messageBody, int userId, int rentalId) {
 
-        Optional<User> optUser = userRepository.findById(userId);
+        Message message = Message.builder()
+                .message(messageBody)
+                .user(userRepository.getReferenceById(userId))
+                .rental(rentalRepository.getReferenceById(rentalId))
+                .build();
 
-        if (optUser.isEmpty()) {
-            log.error("User " + userId + " not found !");
+        try {
+            // Generated ID : message is inserted right away
+            messageRepository.save(message);
+        } catch (DataIntegrityViolationException ex) {
+            log.error("User " + userId + " or Rental " + rentalId + " not found : "
+                    + ex.getMostSpecificCause().getMessage());
             return false;
         }
-        Optional<Rental> optRental = rentalRepository.findById(rentalId);
 
+        messageStreams.publish(InboxMessageResponse.builder()
+                .id(message.getId())
+                .rentalId(rentalId)
+                .userId(userId)
+                .message(messageBody)
+                .createdAt(message.getCreatedAt())
+                .build());
+        return true;
+    }
+
+    /**
+     * List a page of messages about a rental, newest first, for its owner only.
+     * Rental owner is read from rentals cache.
+     *
+     * @param rentalId Rental ID
+     * @param user authenticated user
+     * @param after cursor of the last message of previous page, null for first page
+     * @param size requested page size, null for default page size
+     * @return Optional Slice of InboxMessageResponse, empty if rental does not exist or is owned by another user
+     * @throws IllegalArgumentException if cursor is not a messages cursor
+     */
+    public Optional<Slice<InboxMessageResponse>> listRentalMessages(
+            int rentalId,
+            AuthenticatedUser user,
+            KeysetCursor after,
+            Integer size
+    ) {
+
+        Optional<RentalResponse> optRental = rentalService.getRental(rentalId);
         if (optRental.isEmpty()) {
-            log.error("Rental " + rentalId + " not found !");
-            return false;
+            log.error("Rental " + rentalId + " does not exist !");
+            return Optional.empty();
         }
-        Message message = Message.builder()
-                .message(messageBody)
-                .user(optUser.get())
-                .rental(optRental.get())
+        if (optRental.get().ownerId() != user.id()) {
+            log.error("User " + user.id() + " cannot read messages of Rental owned by user " + optRental.get().ownerId());
+            return Optional.empty();
+        }
+
+        Pageable page = PageRequest.ofSize(pageSize(size));
+        if (after == null) {
+            return Optional.of(messageRepository.findRentalPage(rentalId, page));
+        }
+        return Optional.of(messageRepository.findRentalPageAfter(rentalId, createdAtOf(after), idOf(after), page));
+    }
+
+    /**
+     * List a page of messages about the rentals of the authenticated user, newest first
+     *
+     * @param user authenticated user
+     * @param after cursor of the last message of previous page, null for first page
+     * @param size requested page size, null for default page size
+     * @return Slice of InboxMessageResponse
+     * @throws IllegalArgumentException if cursor is not a messages cursor
+     */
+    public Slice<InboxMessageResponse> listInbox(AuthenticatedUser user, KeysetCursor after, Integer size) {
+
+        Pageable page = PageRequest.ofSize(pageSize(size));
+        if (after == null) {
+            return messageRepository.findInboxPage(user.id(), page);
+        }
+        return messageRepository.findInboxPageAfter(user.id(), createdAtOf(after), idOf(after), page);
+    }
+
+    /**
+     * Cursor to the position of a message, newest first
+     *
+     * @param message InboxMessageResponse
+     * @return KeysetCursor
+     */
+    public KeysetCursor cursorOf(InboxMessageResponse message) {
+        return new KeysetCursor(SORT, List.of(message.createdAt().toString(), String.valueOf(message.id())));
+    }
+
+    /**
+     * Messages page response, with a cursor to the next page if any
+     *
+     * @param page Slice of InboxMessageResponse
+     * @return InboxResponse
+     */
+    public InboxResponse toResponse(Slice<InboxMessageResponse> page) {
+        List<InboxMessageResponse> messages = page.getContent();
+        return InboxResponse.builder()
+                .messages(messages)
+                .nextCursor(page.hasNext() ? cursorOf(messages.get(messages.size() - 1)).encode() : null)
                 .build();
-        messageRepository.save(message);
+    }
 
-        return true;
+    /**
+     * Creation date held by a messages cursor
+     *
+     * @param cursor KeysetCursor
+     * @return Instant
+     * @throws IllegalArgumentException if cursor is not a messages cursor
+     */
+    private static Instant createdAtOf(KeysetCursor cursor) {
+        checkCursor(cursor);
+        try {
+            return Instant.parse(cursor.keys().get(0));
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid cursor date : " + cursor.keys().get(0), ex);
+        }
+    }
+
+    /**
+     * Message ID held by a messages cursor
+     *
+     * @param cursor KeysetCursor
+     * @return int
+     * @throws IllegalArgumentException if cursor is not a messages cursor
+     */
+    private static int idOf(KeysetCursor cursor) {
+        checkCursor(cursor);
+        return Integer.parseInt(cursor.keys().get(1));
+    }
+
+    /**
+     * Check a cursor was built for messages
+     *
+     * @param cursor KeysetCursor
+     * @throws IllegalArgumentException if cursor is not a messages cursor
+     */
+    private static void checkCursor(KeysetCursor cursor) {
+        if (!SORT.equals(cursor.sort()) || cursor.keys().size() != 2) {
+            throw new IllegalArgumentException("Not a messages cursor : " + cursor.sort());
+        }
+    }
+
+    /**
+     * Return page size, bounded between 1 and max page size
+     *
+     * @param size requested page size
+     * @return int
+     */
+    private int pageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(size, maxPageSize));
     }
 }
@@ -0,0 +1,83 @@
+package com.openclassrooms.api.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Password hashing service
+ * Runs password hashing and verification on a few dedicated threads, with a bounded waiting queue,
+ * so a burst of logins cannot take all request threads.
+ * Deliberately not an Executor bean, not to replace the application task executor.
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService monitoredExecutor;
+
+    /**
+     * Constructor for PasswordHashingService class
+     *
+     * @param threads number of hashing threads
+     * @param queueCapacity max number of waiting tasks
+     * @param meterRegistry MeterRegistry
+     */
+    public PasswordHashingService(
+            @Value("${app.password.threads}") int threads,
+            @Value("${app.password.queue-capacity}") int queueCapacity,
+            MeterRegistry meterRegistry
+    ) {
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("password-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        // executor.* metrics : active threads, queued tasks, rejections and execution time
+        this.monitoredExecutor = ExecutorServiceMetrics.monitor(meterRegistry, executor, "password");
+    }
+
+    /**
+     * Run a task on password hashing threads
+     *
+     * @param task hashing or verification task
+     * @param <T> task result type
+     * @return CompletableFuture of task result
+     * @throws RejectedExecutionException if waiting queue is full
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, monitoredExecutor);
+    }
+
+    /**
+     * Stop hashing threads, letting started tasks complete
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.error("Password hashing tasks still running at shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.openclassrooms.api.service;
+
+import com.openclassrooms.api.model.entity.RefreshToken;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.RefreshTokenRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Refresh token service
+ * Refresh tokens are random, stored server-side as SHA-256 digests, and used only once :
+ * each refresh revokes the used token and issues a new one.
+ * Using a revoked token again revokes every refresh token of its user, as it was likely stolen.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+    private static final int TOKEN_BYTES = 32;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final Duration expiration;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructor for RefreshTokenService class
+     *
+     * @param refreshTokenRepository RefreshTokenRepository
+     * @param userRepository UserRepository
+     * @param expiration refresh token lifetime
+     */
+    public RefreshTokenService(
+            RefreshTokenRepository refreshTokenRepository,
+            UserRepository userRepository,
+            @Value("${app.jwt.refresh.expiration}") String expiration
+    ) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.expiration = DurationStyle.detectAndParse(expiration);
+    }
+
+    /**
+     * Issue a new refresh token for a user
+     *
+     * @param userId User ID
+     * @return refresh token
+     */
+    @Transactional
+    public String issue(int userId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(RefreshToken.builder()
+                .user(userRepository.getReferenceById(userId))
+                .tokenHash(digest(token))
+                .expiresAt(Instant.now().plus(expiration))
+                .build());
+        return token;
+    }
+
+    /**
+     * Use a refresh token : revoke it, and return its user
+     *
+     * @param token refresh token
+     * @return Optional User, empty if token is unknown, expired or already used
+     */
+    @Transactional
+    public Optional<User> use(String token) {
+        Optional<RefreshToken> optRefreshToken = refreshTokenRepository.findByTokenHash(digest(token));
+        if (optRefreshToken.isEmpty()) {
+            return Optional.empty();
+        }
+
+        RefreshToken refreshToken = optRefreshToken.get();
+        Instant now = Instant.now();
+        if (!refreshToken.getExpiresAt().isAfter(now)) {
+            return Optional.empty();
+        }
+
+        // Conditional update : of concurrent uses, only one succeeds
+        if (refreshToken.getRevokedAt() != null || refreshTokenRepository.revoke(refreshToken.getId(), now) == 0) {
+            User user = refreshToken.getUser();
+            log.error("Refresh token of user " + user.getId() + " used twice : every refresh token revoked");
+            refreshTokenRepository.revokeAllOfUser(user.getId(), now);
+            return Optional.empty();
+        }
+
+        // Initialize user, for access token claims
+        User user = refreshToken.getUser();
+        Hibernate.initialize(user);
+        return Optional.of(user);
+    }
+
+    /**
+     * Revoke a refresh token
+     *
+     * @param token refresh token
+     */
+    @Transactional
+    public void revoke(String token) {
+        refreshTokenRepository.findByTokenHash(digest(token))
+                .ifPresent(refreshToken -> refreshTokenRepository.revoke(refreshToken.getId(), Instant.now()));
+    }
+
+    /**
+     * Delete expired refresh tokens
+     */
+    @Scheduled(cron = "${app.jwt.revocation.cleanup-cron}")
+    @Transactional
+    public void deleteExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        log.info(deleted + " expired refresh tokens deleted");
+    }
+
+    /**
+     * SHA-256 digest of a token, hex encoded
+     *
+     * @param token String
+     * @return String
+     */
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.openclassrooms.api.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.openclassrooms.api.configuration.CacheConfig;
+import com.openclassrooms.api.configuration.jwt.AuthenticatedUser;
+import com.openclassrooms.api.model.request.rentals.ImportRentalRequest;
+import com.openclassrooms.api.model.response.rental.ImportRentalsResponse;
+import com.openclassrooms.api.service.search.RentalSearchIndex;
+import com.openclassrooms.api.service.storage.StorageService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * Rental import service
+ * Rows are read one at a time from the input, validated, then inserted by JDBC batches,
+ * each batch in its own transaction. Rental IDs stay generated by the database :
+ * with MySQL, rewriteBatchedStatements turns each batch into multi-row inserts.
+ * Memory used by an import is bounded : one batch, and the first rejected rows of the report.
+ * Rows past max rows are not read.
+ */
+@Slf4j
+@Service
+public class RentalImportService {
+    private static final String IMAGES = "images";
+    private static final String INSERT_RENTAL = """
+            INSERT INTO RENTALS (name, surface, price, picture, description, owner_id, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StorageService storageService;
+    private final RentalSearchIndex searchIndex;
+    private final Cache rentalsCache;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader jsonReader;
+    private final ObjectReader csvReader;
+    private final int batchSize;
+    private final long maxRows;
+    private final int maxErrors;
+    private final int maxLineLength;
+
+    /**
+     * Constructor for RentalImportService class
+     *
+     * @param jdbcTemplate JdbcTemplate
+     * @param transactionTemplate TransactionTemplate
+     * @param storageService StorageService
+     * @param searchIndex RentalSearchIndex
+     * @param cacheManager CacheManager
+     * @param validator Validator
+     * @param objectMapper ObjectMapper
+     * @param batchSize number of rentals inserted per JDBC batch
+     * @param maxRows max number of rows read from an input
+     * @param maxErrors max number of rejected rows reported
+     * @param maxLineLength max number of characters of a newline delimited JSON row
+     */
+    public RentalImportService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            StorageService storageService,
+            RentalSearchIndex searchIndex,
+            CacheManager cacheManager,
+            Validator validator,
+            ObjectMapper objectMapper,
+            @Value("${app.rentals.import.batch-size}") int batchSize,
+            @Value("${app.rentals.import.max-rows}") long maxRows,
+            @Value("${app.rentals.import.max-errors}") int maxErrors,
+            @Value("${app.rentals.import.max-line-length}") int maxLineLength
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.storageService = storageService;
+        this.searchIndex = searchIndex;
+        this.rentalsCache = cacheManager.getCache(CacheConfig.RENTALS_CACHE);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.jsonReader = objectMapper.readerFor(ImportRentalRequest.class);
+        this.csvReader = new CsvMapper()
+                .readerFor(Map.class)
+                .with(CsvSchema.emptySchema().withHeader());
+        this.batchSize = batchSize;
+        this.maxRows = maxRows;
+        this.maxErrors = maxErrors;
+        this.maxLineLength = maxLineLength;
+    }
+
+
+    /**
+     * Import rentals from newline delimited JSON, one rental per line.
+     * Lines longer than max line length are rejected, and skipped without being held in memory.
+     *
+     * @param input InputStream
+     * @param user authenticated user, rentals owner
+     * @return ImportRentalsResponse
+     * @throws IOException if input cannot be read
+     */
+    public ImportRentalsResponse importNdjson(InputStream input, AuthenticatedUser user) throws IOException {
+
+        Importer importer = importer(user);
+
+        BoundedLineReader reader = new BoundedLineReader(
+                new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)),
+                maxLineLength
+        );
+        long line = 0;
+        String json;
+        while ((json = reader.readLine()) != null) {
+            line++;
+            if (line > maxRows) {
+                importer.rejectRest(line);
+                break;
+            }
+            if (reader.isTooLong()) {
+                importer.reject(line, "Row longer than " + maxLineLength + " characters");
+                continue;
+            }
+            if (json.isBlank()) {
+                continue;
+            }
+            try {
+                importer.accept(line, jsonReader.readValue(json));
+            } catch (JsonProcessingException ex) {
+                importer.reject(line, "Invalid JSON : " + ex.getOriginalMessage());
+            }
+        }
+        return importer.finish();
+    }
+
+    /**
+     * Import rentals from CSV, with a header line naming columns.
+     * Rows are read as text columns then converted, so that a badly typed value rejects its row only.
+     *
+     * @param input InputStream
+     * @param user authenticated user, rentals owner
+     * @return ImportRentalsResponse
+     * @throws IOException if input cannot be read
+     */
+    public ImportRentalsResponse importCsv(InputStream input, AuthenticatedUser user) throws IOException {
+
+        Importer importer = importer(user);
+
+        try (MappingIterator<Map<String, String>> rows = csvReader.readValues(input)) {
+            long count = 0;
+            while (true) {
+                long line = rows.getCurrentLocation().getLineNr();
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                    line = rows.getCurrentLocation().getLineNr();
+                    if (++count > maxRows) {
+                        importer.rejectRest(line);
+                        break;
+                    }
+                    Map<String, String> columns = rows.nextValue();
+                    importer.accept(line, objectMapper.convertValue(columns, ImportRentalRequest.class));
+                } catch (IllegalArgumentException ex) {
+                    importer.reject(line, "Invalid CSV row : " + ex.getMessage());
+                } catch (JsonProcessingException | RuntimeJsonMappingException ex) {
+                    // Broken CSV structure, following rows cannot be told apart
+                    importer.reject(line, "Invalid CSV : " + ex.getMessage());
+                    break;
+                }
+            }
+        }
+        return importer.finish();
+    }
+
+    /**
+     * New import for an owner
+     * Owner is not loaded : rows of a deleted owner are rejected by the owner foreign key.
+     *
+     * @param user authenticated user, rentals owner
+     * @return Importer
+     */
+    private Importer importer(AuthenticatedUser user) {
+
+        String imagesUrl = ServletUriComponentsBuilder
+                .fromCurrentContextPath()
+                .pathSegment(IMAGES)
+                .toUriString();
+        return new Importer(user.id(), imagesUrl);
+    }
+
+    /**
+     * Insert a batch of rentals
+     *
+     * @param ownerId owner ID
+     * @param rentals valid rentals
+     * @return generated IDs, in rentals order
+     * @throws DataAccessException if insert fails
+     */
+    private List<Integer> insert(int ownerId, List<PendingRental> rentals) {
+
+        return jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            final Timestamp now = Timestamp.from(Instant.now());
+            final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone(ZoneOffset.UTC));
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    INSERT_RENTAL,
+                    Statement.RETURN_GENERATED_KEYS
+            )) {
+                for (PendingRental rental : rentals) {
+                    statement.setString(1, rental.request().name());
+                    statement.setBigDecimal(2, rental.request().surface());
+                    statement.setBigDecimal(3, rental.request().price());
+                    statement.setString(4, rental.pictureUrl());
+                    statement.setString(5, rental.request().description());
+                    statement.setInt(6, ownerId);
+                    statement.setTimestamp(7, now, utc);
+                    statement.setTimestamp(8, now, utc);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                List<Integer> ids = new ArrayList<>(rentals.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getInt(1));
+                    }
+                }
+                if (ids.size() != rentals.size()) {
+                    throw new SQLException(ids.size() + " generated keys for " + rentals.size() + " rentals");
+                }
+                return ids;
+            }
+        });
+    }
+
+    /**
+     * Reader of lines of bounded length : characters of a longer line are read, but not kept
+     */
+    private static class BoundedLineReader {
+        private final Reader reader;
+        private final int maxLength;
+        private final StringBuilder line = new StringBuilder();
+        private boolean tooLong;
+
+        /**
+         * Constructor for BoundedLineReader class
+         *
+         * @param reader buffered Reader
+         * @param maxLength max number of characters of a line, line terminator excluded
+         */
+        BoundedLineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * Read next line, terminated by \n or \r\n
+         *
+         * @return line, empty if it is too long, null at end of input
+         * @throws IOException if input cannot be read
+         */
+        String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            for (; c != -1 && c != '\n'; c = reader.read()) {
+                if (tooLong) {
+                    continue;
+                }
+                if (line.length() > maxLength) {
+                    // One more character is kept, for a \r terminator
+                    tooLong = true;
+                    line.setLength(0);
+                    continue;
+                }
+                line.append((char) c);
+            }
+            if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+                line.setLength(line.length() - 1);
+            }
+            if (line.length() > maxLength) {
+                tooLong = true;
+                line.setLength(0);
+            }
+            return line.toString();
+        }
+
+        /**
+         * Whether last read line was longer than max length
+         *
+         * @return boolean
+         */
+        boolean isTooLong() {
+            return tooLong;
+        }
+    }
+
+    /**
+     * Valid row waiting for its batch
+     *
+     * @param line line number in input
+     * @param request ImportRentalRequest
+     * @param pictureUrl picture URL
+     */
+    private record PendingRental(long line, ImportRentalRequest request, String pictureUrl) {
+    }
+
+    /**
+     * State of an import : pending batch, counts, and first rejected rows
+     */
+    private class Importer {
+        private final int ownerId;
+        private final String imagesUrl;
+        private final List<PendingRental> batch = new ArrayList<>();
+        // Rejected rows of lowest line numbers, greatest on top to be dropped first
+        private final PriorityQueue<ImportRentalsResponse.Row> errors = new PriorityQueue<>(
+                Comparator.comparingLong(ImportRentalsResponse.Row::line).reversed()
+        );
+        private int imported = 0;
+        private int rejected = 0;
+
+        /**
+         * Constructor for Importer class
+         *
+         * @param ownerId owner ID
+         * @param imagesUrl URL of stored images
+         */
+        Importer(int ownerId, String imagesUrl) {
+            this.ownerId = ownerId;
+            this.imagesUrl = imagesUrl;
+        }
+
+        /**
+         * Validate a row, then add it to pending batch
+         *
+         * @param line line number in input
+         * @param request ImportRentalRequest
+         */
+        void accept(long line, ImportRentalRequest request) {
+
+            if (request == null) {
+                reject(line, "Empty row");
+                return;
+            }
+
+            List<String> violations = validator.validate(request).stream()
+                    .sorted(Comparator.comparing(violation -> violation.getPropertyPath().toString()))
+                    .map(RentalImportService::describe)
+                    .toList();
+            if (!violations.isEmpty()) {
+                reject(line, String.join(", ", violations));
+                return;
+            }
+
+            Optional<String> pictureUrl = pictureUrl(request.picture().trim());
+            if (pictureUrl.isEmpty()) {
+                reject(line, "picture : no stored image " + request.picture());
+                return;
+            }
+
+            batch.add(new PendingRental(line, request, pictureUrl.get()));
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Report a rejected row
+         *
+         * @param line line number in input
+         * @param error rejection reason
+         */
+        void reject(long line, String error) {
+            rejected++;
+            errors.add(new ImportRentalsResponse.Row(line, error));
+            if (errors.size() > maxErrors) {
+                errors.poll();
+            }
+        }
+
+        /**
+         * Report the first row past max rows : following rows are not read
+         *
+         * @param line line number in input
+         */
+        void rejectRest(long line) {
+            reject(line, "Import limited to " + maxRows + " rows, this row and the following ones were not read");
+        }
+
+        /**
+         * Insert last batch, then build the report, with rejected rows in line order
+         *
+         * @return ImportRentalsResponse
+         */
+        ImportRentalsResponse finish() {
+            flush();
+            List<ImportRentalsResponse.Row> firstErrors = new ArrayList<>(errors);
+            firstErrors.sort(Comparator.comparingLong(ImportRentalsResponse.Row::line));
+            log.info(imported + " rentals imported, " + rejected + " rejected");
+            return ImportRentalsResponse.builder()
+                    .imported(imported)
+                    .rejected(rejected)
+                    .errors(firstErrors)
+                    .build();
+        }
+
+        /**
+         * Insert pending batch in its own transaction.
+         * If the database rejects a row of the batch, rows are inserted one by one,
+         * so that only faulty rows are rejected.
+         */
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                List<Integer> ids = transactionTemplate.execute(status -> insert(ownerId, batch));
+                for (int i = 0; i < batch.size(); i++) {
+                    imported(batch.get(i), ids.get(i));
+                }
+            } catch (DataIntegrityViolationException ex) {
+                log.error("Rentals batch rejected, inserting one by one : " + ex.getMostSpecificCause().getMessage());
+                batch.forEach(this::flushOne);
+            } catch (DataAccessException | TransactionException ex) {
+                log.error("Rentals batch insert failed : " + ex.getMessage());
+                batch.forEach(rental -> reject(rental.line(), "Insert failed"));
+            }
+            batch.clear();
+        }
+
+        /**
+         * Insert a single row in its own transaction
+         *
+         * @param rental PendingRental
+         */
+        private void flushOne(PendingRental rental) {
+            try {
+                List<Integer> ids = transactionTemplate.execute(status -> insert(ownerId, List.of(rental)));
+                imported(rental, ids.get(0));
+            } catch (DataIntegrityViolationException ex) {
+                log.error("Rental of line " + rental.line() + " rejected : " + ex.getMostSpecificCause().getMessage());
+                reject(rental.line(), "Rejected by database constraints");
+            } catch (DataAccessException | TransactionException ex) {
+                log.error("Rental insert failed : " + ex.getMessage());
+                reject(rental.line(), "Insert failed");
+            }
+        }
+
+        /**
+         * Count an inserted row, and make it visible to reads and search
+         *
+         * @param rental PendingRental
+         * @param id generated Rental ID
+         */
+        private void imported(PendingRental rental, int id) {
+            imported++;
+
+            // A read before import may have cached the ID as missing
+            rentalsCache.evict(id);
+            searchIndex.index(id, rental.request().name(), rental.request().description());
+        }
+
+        /**
+         * URL of a picture : kept as is if it is an URL, else URL of an already stored image
+         *
+         * @param picture picture URL, or stored image filename
+         * @return Optional URL, empty if image is not stored
+         */
+        private Optional<String> pictureUrl(String picture) {
+            if (picture.startsWith("http://") || picture.startsWith("https://")) {
+                return Optional.of(picture);
+            }
+            if (!storageService.exists(picture, IMAGES)) {
+                return Optional.empty();
+            }
+            return Optional.of(imagesUrl + "/" + UriUtils.encodePathSegment(picture, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Describe a validation error
+     *
+     * @param violation ConstraintViolation
+     * @return String
+     */
+    private static String describe(ConstraintViolation<ImportRentalRequest> violation) {
+        return violation.getPropertyPath() + " : " + violation.getMessage();
+    }
+}
@@ -1,18 +1,39 @@
 package com.openclassrooms.api.service;
 
+import com.openclassrooms.api.configuration.CacheConfig;
+import com.openclassrooms.api.configuration.jwt.AuthenticatedUser;
 import com.openclassrooms.api.exception.StorageException;
 import com.openclassrooms.api.model.entity.Rental;
-import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.pagination.KeysetCursor;
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.model.version.TableVersion;
 import com.openclassrooms.api.repository.RentalRepository;
 import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.search.RentalSearchIndex;
 import com.openclassrooms.api.service.storage.StorageService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Rental service
@@ -23,6 +44,11 @@ public class RentalService {
     private final RentalRepository rentalRepository;
     private final UserRepository userRepository;
     private final StorageService storageService;
+    private final RentalSearchIndex searchIndex;
+    private final Cache rentalsCache;
+    private final Cache rentalsJsonCache;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
     /**
      * Constructor for RentalService class
@@ -30,51 +56,161 @@ public class RentalService {
      * @param rentalRepository RentalRepository
      * @param userRepository UserRepository
      * @param storageService StorageService
+     * @param searchIndex RentalSearchIndex
+     * @param cacheManager CacheManager
+     * @param defaultPageSize page size used when none is requested
+     * @param maxPageSize upper bound of requested page size
      */
     public RentalService(
             RentalRepository rentalRepository,
             UserRepository userRepository,
-            StorageService storageService
+            StorageService storageService,
+            RentalSearchIndex searchIndex,
+            CacheManager cacheManager,
+            @Value("${app.rentals.page-size}") int defaultPageSize,
+            @Value("${app.rentals.max-page-size}") int maxPageSize
     ) {
         this.rentalRepository = rentalRepository;
         this.userRepository = userRepository;
         this.storageService = storageService;
+        this.searchIndex = searchIndex;
+        this.rentalsCache = cacheManager.getCache(CacheConfig.RENTALS_CACHE);
+        this.rentalsJsonCache = cacheManager.getCache(CacheConfig.RENTALS_JSON_CACHE);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
 
     /**
      * get a Rental by id
+     * Read through rentals cache : concurrent misses on the same id load it only once.
      *
      * @param id Rental id
-     * @return Optional Rental
+     * @return Optional RentalResponse
      */
-    public Optional<Rental> getRental(final int id) {
+    @Cacheable(cacheNames = CacheConfig.RENTALS_CACHE, key = "#id", sync = true)
+    public Optional<RentalResponse> getRental(final int id) {
 
         // Retrieve rental
-        return rentalRepository.findById(id);
+        return rentalRepository.findResponseById(id);
     }
 
     /**
-     * List all Rentals
+     * Get version of all Rentals : last update date and count
      *
-     * @return Iterable of Rental
+     * @return TableVersion
      */
-    public Iterable<Rental> listRentals() {
+    public TableVersion getRentalsVersion() {
+        return rentalRepository.findVersion();
+    }
 
-        // Retrieve rentals
-        return rentalRepository.findAll();
+    /**
+     * Read all Rentals one by one, ordered by creation date then ID.
+     * Rentals are not kept once consumed, so memory stays flat whatever the number of rentals.
+     *
+     * @param action action performed on each Rental
+     */
+    @Transactional(readOnly = true)
+    public void forEachRental(Consumer<RentalResponse> action) {
+
+        try (Stream<RentalResponse> rentals = rentalRepository.streamAll()) {
+            rentals.forEach(action);
+        }
+    }
+
+    /**
+     * List a page of Rentals matching a filter, in a given sort, then by ID
+     *
+     * @param filter RentalFilter
+     * @param sort RentalSort
+     * @param after cursor of the last row of previous page, built for the same sort, null for first page
+     * @param size requested page size, null for default page size
+     * @return Slice of RentalResponse
+     * @throws IllegalArgumentException if cursor was built for another sort, or holds invalid values
+     */
+    public Slice<RentalResponse> listRentals(RentalFilter filter, RentalSort sort, KeysetCursor after, Integer size) {
+
+        return rentalRepository.findPage(filter, sort, after == null ? null : sort.keysOf(after), pageSize(size));
+    }
+
+    /**
+     * Cursor to the position of a Rental in a given sort
+     *
+     * @param sort RentalSort
+     * @param rental RentalResponse
+     * @return KeysetCursor
+     */
+    public KeysetCursor cursorOf(RentalSort sort, RentalResponse rental) {
+
+        List<String> keys = new ArrayList<>();
+        sort.orders().forEach(order -> keys.add(order.field().format(rental)));
+        keys.add(String.valueOf(rental.id()));
+        return new KeysetCursor(sort.format(), keys);
+    }
+
+    /**
+     * Search Rentals by name and description, ordered by decreasing relevance
+     *
+     * @param query search query
+     * @param page page number, starting at 0
+     * @param size requested page size, null for default page size
+     * @return List of RentalResponse
+     * @throws IllegalArgumentException if page is negative, or so far that its offset overflows
+     */
+    public List<RentalResponse> searchRentals(String query, int page, Integer size) {
+
+        final int pageSize = pageSize(size);
+        if (page < 0) {
+            throw new IllegalArgumentException("Invalid search page " + page);
+        }
+        final int offset;
+        try {
+            // Index keeps offset + page size best results
+            offset = Math.multiplyExact(page, pageSize);
+            Math.addExact(offset, pageSize);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Invalid search page " + page);
+        }
+
+        List<Integer> ids = searchIndex.search(query, offset, pageSize);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Restore relevance order
+        Map<Integer, Integer> ranks = new HashMap<>();
+        for (int rank = 0; rank < ids.size(); rank++) {
+            ranks.put(ids.get(rank), rank);
+        }
+        return rentalRepository.findResponsesByIds(ids).stream()
+                .sorted(Comparator.comparing(rental -> ranks.get(rental.id())))
+                .toList();
+    }
+
+    /**
+     * Return page size, bounded between 1 and max page size
+     *
+     * @param size requested page size
+     * @return int
+     */
+    private int pageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(size, maxPageSize));
     }
 
 
     /**
      * Save new Rental
+     * Owner is attached by its ID, without being loaded.
      *
      * @param name Rental name
      * @param surface Rental surface
      * @param price Rental price
      * @param picture Rental picture
      * @param description Rental description
-     * @param username Rental username
+     * @param user authenticated user, Rental owner
      * @return boolean
      */
     public boolean saveRental(
@@ -83,7 +219,7 @@ public class RentalService {
             BigDecimal price,
             MultipartFile picture,
             String description,
-            String username
+            AuthenticatedUser user
     ) {
 
         final String contentType = picture.getContentType();
@@ -92,15 +228,6 @@ public class RentalService {
             return false;
         }
 
-        // Retrieve user
-        Optional<User> optUser = userRepository.findByEmail(username);
-
-        // Check user existence
-        if (optUser.isEmpty()) {
-            log.error("Invalid username");
-            return false;
-        }
-
         // Store rental image
         final String subdir = "images";
         String imageUrl;
@@ -122,23 +249,32 @@ public class RentalService {
                 .price(price)
                 .picture(imageUrl)
                 .description(description)
-                .owner(optUser.get())
+                .owner(userRepository.getReferenceById(user.id()))
                 .build();
 
-        // Save rental
-        rentalRepository.saveAndFlush(rental);
+        // Save rental, owner foreign key rejects users deleted since their token was issued
+        try {
+            rentalRepository.saveAndFlush(rental);
+        } catch (DataIntegrityViolationException ex) {
+            log.error("User " + user.id() + " cannot own Rental : " + ex.getMostSpecificCause().getMessage());
+            return false;
+        }
+        refreshCachedRental(rental.getId());
+        searchIndex.index(rental.getId(), name, description);
         return true;
     }
 
 
     /**
      * Update existing Rental
+     * Owner is checked on its ID, without being loaded.
+     *
      * @param id Rental ID
      * @param name Rental name
      * @param surface Rental surface
      * @param price Rental price
      * @param description Rental description
-     * @param principalName Principal name
+     * @param user authenticated user
      * @return boolean
      */
     public boolean updateRental(
@@ -147,7 +283,7 @@ public class RentalService {
             BigDecimal surface,
             BigDecimal price,
             String description,
-            String principalName
+            AuthenticatedUser user
     ) {
 
         // Retrieve rental
@@ -161,9 +297,9 @@ public class RentalService {
 
         Rental rental = optRental.get();
 
-        // Check rental owner
-        if ( !principalName.equals(rental.getOwner().getEmail()) ) {
-            log.error(principalName + " cannot update Rental owned by " + rental.getOwner().getEmail());
+        // Check rental owner : ID of the lazy owner is read from the rental row
+        if ( rental.getOwner().getId() != user.id() ) {
+            log.error("User " + user.id() + " cannot update Rental owned by user " + rental.getOwner().getId());
             return false;
         }
 
@@ -175,6 +311,20 @@ public class RentalService {
 
         // Save rental
         rentalRepository.saveAndFlush(rental);
+        refreshCachedRental(id);
+        searchIndex.index(id, name, description);
         return true;
     }
+
+    /**
+     * Replace cached Rental by its committed state, and drop its cached JSON.
+     * A read loading the previous state at the same time completes before the put,
+     * so the put always wins.
+     *
+     * @param id Rental ID
+     */
+    private void refreshCachedRental(int id) {
+        rentalsCache.put(id, rentalRepository.findResponseById(id).orElse(null));
+        rentalsJsonCache.evict(id);
+    }
 }
@@ -0,0 +1,171 @@
+package com.openclassrooms.api.service;
+
+import com.openclassrooms.api.model.entity.RevokedToken;
+import com.openclassrooms.api.repository.RevokedTokenRepository;
+import com.openclassrooms.api.service.bloom.BloomFilter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Access token revocation service
+ * Revoked token IDs are stored in database, and kept in memory in Bloom filters,
+ * one per time bucket of token expiration : checking a token probes a single filter, without database read,
+ * and a whole bucket is dropped once its tokens are expired.
+ * Revocations of other nodes are read from database every poll interval.
+ * A false positive rejects a valid access token : the client refreshes it and gets a new token ID.
+ */
+@Slf4j
+@Service
+public class TokenRevocationService {
+    private static final Duration POLL_OVERLAP = Duration.ofMinutes(1);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final long bucketWidth;
+    private final long expectedPerBucket;
+    private final double falsePositiveRate;
+    private final ConcurrentNavigableMap<Long, BloomFilter> buckets = new ConcurrentSkipListMap<>();
+    private volatile Instant lastPoll = Instant.EPOCH;
+
+    /**
+     * Constructor for TokenRevocationService class
+     *
+     * @param revokedTokenRepository RevokedTokenRepository
+     * @param meterRegistry MeterRegistry
+     * @param bucketWidth expiration period covered by each Bloom filter
+     * @param expectedPerBucket expected number of revocations per bucket
+     * @param falsePositiveRate expected false positive rate of each bucket
+     */
+    public TokenRevocationService(
+            RevokedTokenRepository revokedTokenRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.jwt.revocation.bucket-width}") String bucketWidth,
+            @Value("${app.jwt.revocation.expected-per-bucket}") long expectedPerBucket,
+            @Value("${app.jwt.revocation.false-positive-rate}") double falsePositiveRate
+    ) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.bucketWidth = DurationStyle.detectAndParse(bucketWidth).toMillis();
+        this.expectedPerBucket = expectedPerBucket;
+        this.falsePositiveRate = falsePositiveRate;
+
+        Gauge.builder("jwt.revocation.buckets", buckets, ConcurrentNavigableMap::size)
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.memory", buckets, map -> map.values().stream()
+                        .mapToLong(BloomFilter::memoryBytes)
+                        .sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Revoke an access token until its expiration
+     *
+     * @param tokenId token ID
+     * @param expiresAt token expiration date
+     */
+    @Transactional
+    public void revoke(String tokenId, Instant expiresAt) {
+        if (tokenId == null || !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        if (!revokedTokenRepository.existsById(tokenId)) {
+            revokedTokenRepository.save(RevokedToken.builder()
+                    .tokenId(tokenId)
+                    .expiresAt(expiresAt)
+                    .revokedAt(Instant.now())
+                    .build());
+        }
+        add(tokenId, expiresAt);
+    }
+
+    /**
+     * Check if an access token was revoked
+     *
+     * @param tokenId token ID, null for tokens issued before revocation support
+     * @param expiresAt token expiration date
+     * @return boolean, true may rarely be a false positive
+     */
+    public boolean isRevoked(String tokenId, Instant expiresAt) {
+        if (tokenId == null) {
+            return false;
+        }
+        BloomFilter bucket = buckets.get(bucketOf(expiresAt));
+        return bucket != null && bucket.mightContain(tokenId);
+    }
+
+    /**
+     * Load revocations at startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        poll();
+    }
+
+    /**
+     * Read revocations made since last poll, by any node, and drop expired buckets
+     */
+    @Scheduled(
+            fixedDelayString = "${app.jwt.revocation.poll-interval}",
+            initialDelayString = "${app.jwt.revocation.poll-interval}"
+    )
+    public void poll() {
+        Instant now = Instant.now();
+
+        // Overlap with previous poll, for revocations committed late
+        for (RevokedToken revoked : revokedTokenRepository.findRevokedSince(lastPoll.minus(POLL_OVERLAP), now)) {
+            add(revoked.getTokenId(), revoked.getExpiresAt());
+        }
+        lastPoll = now;
+
+        buckets.headMap(bucketOf(now)).clear();
+    }
+
+    /**
+     * Delete revocations of expired tokens from database
+     */
+    @Scheduled(cron = "${app.jwt.revocation.cleanup-cron}")
+    @Transactional
+    public void deleteExpired() {
+        int deleted = revokedTokenRepository.deleteExpired(Instant.now());
+        log.info(deleted + " expired revoked tokens deleted");
+    }
+
+    /**
+     * Add a token ID to the Bloom filter of its expiration bucket
+     *
+     * @param tokenId token ID
+     * @param expiresAt token expiration date
+     */
+    private void add(String tokenId, Instant expiresAt) {
+        BloomFilter bucket = buckets.computeIfAbsent(
+                bucketOf(expiresAt),
+                key -> new BloomFilter(expectedPerBucket, falsePositiveRate)
+        );
+        bucket.put(tokenId);
+        if (bucket.insertions() == expectedPerBucket + 1) {
+            log.warn("Revocation bucket over " + expectedPerBucket + " tokens : false positive rate increases");
+        }
+    }
+
+    /**
+     * Bucket of a token expiration date
+     *
+     * @param expiresAt token expiration date
+     * @return bucket index
+     */
+    private long bucketOf(Instant expiresAt) {
+        return Math.floorDiv(expiresAt.toEpochMilli(), bucketWidth);
+    }
+}
@@ -1,17 +1,26 @@
 package com.openclassrooms.api.service;
 
+import com.openclassrooms.api.configuration.CacheConfig;
 import com.openclassrooms.api.model.entity.User;
 import com.openclassrooms.api.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.Locale;
 import java.util.Optional;
 
 
 /**
  * User service
  */
+@Slf4j
 @Service
 public class UserService {
+    private static final String CACHE_KEY = "T(com.openclassrooms.api.service.UserService).cacheKey(#email)";
+
     private final UserRepository userRepository;
 
 
@@ -32,4 +41,111 @@ public class UserService {
     public Optional<User> getUser(int id) {
         return userRepository.findById(id);
     }
+
+    /**
+     * Retrieve user by email
+     * Users are cached as immutable snapshots, shared by every thread, and so are unknown emails, for a shorter time.
+     * Emails are compared case-insensitively by the database, and so are they by cache keys.
+     *
+     * @param email User email
+     * @return Optional CachedUser
+     */
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = CACHE_KEY)
+    public Optional<CachedUser> getUserByEmail(String email) {
+        return userRepository.findByEmail(email.trim()).map(CachedUser::of);
+    }
+
+    /**
+     * Remove a user, or an unknown email, from users cache
+     *
+     * @param email User email
+     */
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, key = CACHE_KEY)
+    public void evictUser(String email) {
+        log.debug("User " + email + " evicted from cache");
+    }
+
+    /**
+     * Users cache key of an email : every casing of an email is the same user
+     *
+     * @param email User email
+     * @return String
+     */
+    public static String cacheKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Retrieve last update date of a user
+     *
+     * @param id User ID
+     * @return Optional Instant
+     */
+    public Optional<Instant> getUserVersion(int id) {
+        return userRepository.findUpdatedAtById(id);
+    }
+
+    /**
+     * Immutable snapshot of a User, kept in users cache
+     * Callers get a new, detached, User of their own : changing it never changes the cache.
+     *
+     * @param id User ID
+     * @param email User email
+     * @param name User name
+     * @param password User password hash
+     * @param createdAt User creation date
+     * @param updatedAt User last update date
+     */
+    public record CachedUser(
+            int id,
+            String email,
+            String name,
+            String password,
+            Instant createdAt,
+            Instant updatedAt
+    ) {
+
+        /**
+         * Snapshot of a User
+         *
+         * @param user User
+         * @return CachedUser
+         */
+        public static CachedUser of(User user) {
+            return new CachedUser(
+                    user.getId(),
+                    user.getEmail(),
+                    user.getName(),
+                    user.getPassword(),
+                    user.getCreatedAt(),
+                    user.getUpdatedAt()
+            );
+        }
+
+        /**
+         * New detached User, copy of this snapshot
+         *
+         * @return User
+         */
+        public User toUser() {
+            return User.builder()
+                    .id(id)
+                    .email(email)
+                    .name(name)
+                    .password(password)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .build();
+        }
+
+        /**
+         * Password hash is left out, so that it is never logged
+         *
+         * @return String
+         */
+        @Override
+        public String toString() {
+            return "CachedUser[id=" + id + ", email=" + email + "]";
+        }
+    }
 }
@@ -0,0 +1,296 @@
+package com.openclassrooms.api.service.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.openclassrooms.api.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency keys of POST requests
+ * The response of a request sent with an Idempotency-Key header is kept, by user, route and key, from the time the
+ * request comes in : a retry gets the response of the first request, once it is complete, without running again.
+ * A fingerprint of the request payload is kept with its key : the same key sent with another payload is rejected.
+ * Keys of requests in flight are pinned in their own map, never evicted, and move to kept responses once complete.
+ * Kept responses are grouped by user, in a Caffeine cache bounded by the total number of kept keys, whose hash table
+ * is locked by bins rather than as a whole : each user keeps at most max keys per user, its oldest keys making room
+ * for its new ones, so that one user cannot evict the keys of others. Keys expire some time after the first request.
+ * Keys of failed requests are forgotten, so that they can be retried.
+ * Kept responses are replayed as is : callers only run requests whose response tells their final outcome.
+ */
+@Slf4j
+@Service
+public class IdempotencyStore {
+
+    /**
+     * Request header holding the idempotency key
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /**
+     * Response header telling a response is the one of a previous request
+     */
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final int maxKeysPerUser;
+    private final long ttlNanos;
+    private final Map<Key, Entry> inFlight = new ConcurrentHashMap<>();
+    private final Cache<Integer, UserResponses> responses;
+    private final Counter replays;
+
+    /**
+     * Constructor for IdempotencyStore class
+     *
+     * @param maxKeys max number of kept keys, all users together
+     * @param maxKeysPerUser max number of kept keys of a user
+     * @param ttl time during which a key is kept
+     * @param meterRegistry MeterRegistry
+     */
+    public IdempotencyStore(
+            @Value("${app.idempotency.max-keys}") long maxKeys,
+            @Value("${app.idempotency.max-keys-per-user}") int maxKeysPerUser,
+            @Value("${app.idempotency.ttl}") String ttl,
+            MeterRegistry meterRegistry
+    ) {
+        Duration duration = DurationStyle.detectAndParse(ttl);
+        this.maxKeysPerUser = maxKeysPerUser;
+        this.ttlNanos = duration.toNanos();
+
+        // Weighed by number of kept keys, updated on each change of a user responses
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(maxKeys)
+                .weigher((Integer userId, UserResponses kept) -> kept.size())
+                .expireAfterAccess(duration)
+                .build();
+
+        this.replays = Counter.builder("idempotency.replays")
+                .description("Requests answered with the response of a previous request")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.in-flight", inFlight, Map::size)
+                .description("Requests with an idempotency key in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check an idempotency key : not blank, at most 255 characters
+     *
+     * @param key idempotency key
+     * @return boolean
+     */
+    public static boolean isValid(String key) {
+        return key != null && !key.isBlank() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Run a request once per user, route and idempotency key.
+     * First request runs, on the calling thread. Following requests with the same payload do not run : they get
+     * the response of the first request, with an Idempotent-Replayed header, as soon as it is complete.
+     *
+     * @param userId authenticated user ID
+     * @param route request method and path
+     * @param key idempotency key
+     * @param fingerprint fingerprint of the request payload
+     * @param request request processing
+     * @param <T> response body type
+     * @return CompletableFuture of ResponseEntity
+     * @throws IdempotencyKeyReusedException if the key was sent with another payload
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<ResponseEntity<T>> execute(
+            int userId,
+            String route,
+            String key,
+            String fingerprint,
+            Supplier<CompletableFuture<ResponseEntity<T>>> request
+    ) {
+        final Key idempotencyKey = new Key(userId, route, key);
+        final Entry created = new Entry(fingerprint, new CompletableFuture<>(), System.nanoTime());
+
+        Entry entry = find(idempotencyKey, created);
+        if (entry != created) {
+            if (!entry.fingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(
+                        IDEMPOTENCY_KEY + " " + key + " already used for another request");
+            }
+            replays.increment();
+            log.info("Request " + route + " of user " + userId + " replayed for idempotency key " + key);
+            return entry.response().thenApply(entity -> (ResponseEntity<T>) replayed(entity));
+        }
+
+        try {
+            request.get().whenComplete((entity, ex) -> {
+                if (ex != null) {
+                    inFlight.remove(idempotencyKey, created);
+                    created.response().completeExceptionally(ex);
+                } else {
+                    keep(idempotencyKey, created);
+                    created.response().complete(entity);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(idempotencyKey, created);
+            created.response().completeExceptionally(ex);
+            throw ex;
+        }
+        return created.response().thenApply(entity -> (ResponseEntity<T>) entity);
+    }
+
+    /**
+     * Entry of an idempotency key, in flight or kept, or else the created entry, then pinned as in flight.
+     * Runs under the lock of the user responses, as does the move of complete entries to kept responses.
+     *
+     * @param idempotencyKey Key
+     * @param created entry of a new request
+     * @return Entry
+     */
+    private Entry find(Key idempotencyKey, Entry created) {
+        Entry[] found = new Entry[1];
+        responses.asMap().compute(idempotencyKey.userId(), (userId, kept) -> {
+            UserResponses userResponses = kept != null ? kept : new UserResponses(maxKeysPerUser);
+            Entry entry = inFlight.get(idempotencyKey);
+            if (entry == null) {
+                entry = userResponses.get(idempotencyKey, System.nanoTime() - ttlNanos);
+            }
+            if (entry == null) {
+                inFlight.put(idempotencyKey, created);
+                entry = created;
+            }
+            found[0] = entry;
+            return userResponses;
+        });
+        return found[0];
+    }
+
+    /**
+     * Move a complete entry from in flight requests to kept responses of its user
+     *
+     * @param idempotencyKey Key
+     * @param entry complete entry
+     */
+    private void keep(Key idempotencyKey, Entry entry) {
+        responses.asMap().compute(idempotencyKey.userId(), (userId, kept) -> {
+            UserResponses userResponses = kept != null ? kept : new UserResponses(maxKeysPerUser);
+            userResponses.put(idempotencyKey, entry, System.nanoTime() - ttlNanos);
+            inFlight.remove(idempotencyKey, entry);
+            return userResponses;
+        });
+    }
+
+    /**
+     * Copy of a response, marked as replayed
+     *
+     * @param entity ResponseEntity
+     * @return ResponseEntity
+     */
+    private static ResponseEntity<?> replayed(ResponseEntity<?> entity) {
+        return ResponseEntity.status(entity.getStatusCode())
+                .headers(entity.getHeaders())
+                .header(IDEMPOTENT_REPLAYED, "true")
+                .body(entity.getBody());
+    }
+
+    /**
+     * Idempotency key of a user, on a route
+     *
+     * @param userId user ID
+     * @param route request method and path
+     * @param key idempotency key
+     */
+    private record Key(int userId, String route, String key) {
+    }
+
+    /**
+     * Request run for an idempotency key
+     * Compared by identity : an entry is removed only by the request that created it.
+     *
+     * @param fingerprint fingerprint of the request payload
+     * @param response response of the request, once complete
+     * @param createdAt time of the first request, from System.nanoTime()
+     */
+    private record Entry(String fingerprint, CompletableFuture<ResponseEntity<?>> response, long createdAt) {
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * Kept responses of a user, oldest first
+     * Only read and changed under the lock of its cache entry.
+     */
+    private static final class UserResponses {
+        private final LinkedHashMap<Key, Entry> entries;
+
+        /**
+         * Constructor for UserResponses class
+         *
+         * @param maxKeys max number of kept keys : oldest keys are removed first
+         */
+        private UserResponses(int maxKeys) {
+            this.entries = new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+
+        /**
+         * Kept entry of a key, unless expired
+         *
+         * @param key Key
+         * @param createdAfter oldest time of a first request still kept, from System.nanoTime()
+         * @return Entry, null if none
+         */
+        private Entry get(Key key, long createdAfter) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.createdAt() - createdAfter < 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        /**
+         * Keep the entry of a key, after removing expired entries
+         *
+         * @param key Key
+         * @param entry complete Entry
+         * @param createdAfter oldest time of a first request still kept, from System.nanoTime()
+         */
+        private void put(Key key, Entry entry, long createdAfter) {
+            entries.values().removeIf(kept -> kept.createdAt() - createdAfter < 0);
+            entries.put(key, entry);
+        }
+
+        /**
+         * Number of kept keys
+         *
+         * @return int
+         */
+        private int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.openclassrooms.api.service.idempotency;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * SHA-256 digest of the fields of a request, kept with its idempotency key
+ * Each field is prefixed with its length, so that ("ab", "c") and ("a", "bc") have different digests.
+ */
+public class RequestFingerprint {
+    private final MessageDigest digest;
+
+    /**
+     * Constructor for RequestFingerprint class
+     */
+    public RequestFingerprint() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Add a field
+     *
+     * @param value field value, may be null
+     * @return this RequestFingerprint
+     */
+    public RequestFingerprint add(Object value) {
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(-1).array());
+            return this;
+        }
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(bytes.length).array());
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Add the content of a stream, such as an uploaded file, read without being held in memory
+     *
+     * @param input InputStream, may be null
+     * @return this RequestFingerprint
+     * @throws IOException if input cannot be read
+     */
+    public RequestFingerprint add(InputStream input) throws IOException {
+        if (input == null) {
+            return add((Object) null);
+        }
+        MessageDigest content = newContentDigest();
+        try (DigestInputStream digestInput = new DigestInputStream(input, content)) {
+            digestInput.transferTo(OutputStream.nullOutputStream());
+        }
+        return add(Base64.getEncoder().encodeToString(content.digest()));
+    }
+
+    /**
+     * Digest of added fields, Base64 encoded
+     *
+     * @return String
+     */
+    public String value() {
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * New digest of a stream content
+     *
+     * @return MessageDigest
+     */
+    private MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance(digest.getAlgorithm());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.openclassrooms.api.service.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.openclassrooms.api.configuration.CacheConfig;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+/**
+ * Cache of RentalResponse JSON, by Rental ID.
+ * Each rental is serialized once, then its bytes are written as is
+ * as long as the rental keeps the same update date.
+ */
+@Component
+public class RentalJsonCache {
+    private final ObjectWriter writer;
+    private final Cache cache;
+
+    /**
+     * Constructor for RentalJsonCache class
+     *
+     * @param objectMapper ObjectMapper
+     * @param cacheManager CacheManager
+     */
+    public RentalJsonCache(ObjectMapper objectMapper, CacheManager cacheManager) {
+        this.writer = objectMapper.writerFor(RentalResponse.class);
+        this.cache = cacheManager.getCache(CacheConfig.RENTALS_JSON_CACHE);
+    }
+
+    /**
+     * JSON of a rental, serialized only if not cached for its update date.
+     * Returned bytes are shared and must not be modified.
+     *
+     * @param rental RentalResponse
+     * @return byte[]
+     */
+    public byte[] toJson(RentalResponse rental) {
+
+        Entry cached = cache.get(rental.id(), Entry.class);
+        if (cached != null && cached.updatedAt() != null && cached.updatedAt().equals(rental.updatedAt())) {
+            return cached.json();
+        }
+
+        byte[] json;
+        try {
+            json = writer.writeValueAsBytes(rental);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        cache.put(rental.id(), new Entry(rental.updatedAt(), json));
+        return json;
+    }
+
+    /**
+     * Cached JSON of a rental
+     *
+     * @param updatedAt update date of serialized rental
+     * @param json serialized rental
+     */
+    public record Entry(Instant updatedAt, byte[] json) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.openclassrooms.api.service.message;
+
+/**
+ * Point at which a sent message is acknowledged
+ */
+public enum MessageDurability {
+
+    /**
+     * Message is queued, and will be inserted with a following batch
+     */
+    ENQUEUED,
+
+    /**
+     * Message is inserted, and its transaction committed
+     */
+    COMMITTED
+}
@@ -0,0 +1,519 @@
+package com.openclassrooms.api.service.message;
+
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.repository.MessageRepository;
+import com.openclassrooms.api.service.RentalService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Messages streams of rental owners (Server-Sent Events)
+ * Open streams are held as SseEmitter, without any request thread, by owner ID.
+ * Committed messages are handed to a single routing thread, with a bounded waiting queue, which finds the rental owner
+ * in rentals cache and adds the message to the bounded outbox of each of its streams, without writing anything :
+ * senders never wait for clients. Outboxes are written by a pool of writing threads, one outbox at a time per stream.
+ * A stream whose outbox is full, or whose write lasts over send timeout, is closed on its own, and its client
+ * reconnects : a slow client never delays other streams for longer than one writing thread.
+ * Writes are blocking, bounded by the container write timeout : a stalled write fails, and releases its thread.
+ * A reconnecting client sends the ID of the last message it received, and gets the messages it missed first.
+ * Streams end with the access token they were opened with, and are closed when it is revoked on logout.
+ */
+@Slf4j
+@Service
+public class MessageStreams {
+    private static final String MESSAGE_EVENT = "message";
+    private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    private final MessageRepository messageRepository;
+    private final RentalService rentalService;
+    private final long timeoutMillis;
+    private final int replaySize;
+    private final int outboxCapacity;
+    private final long sendTimeoutNanos;
+    private final Map<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscription>> tokenSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final ThreadPoolExecutor router;
+    private final ExecutorService monitoredRouter;
+    private final ThreadPoolExecutor writers;
+    private final ExecutorService monitoredWriters;
+    private final Counter dropped;
+    private final Counter lagging;
+
+    /**
+     * Constructor for MessageStreams class
+     *
+     * @param messageRepository MessageRepository
+     * @param rentalService RentalService
+     * @param timeout max stream duration, after which clients reconnect
+     * @param replaySize max number of missed messages sent on reconnection
+     * @param queueCapacity max number of messages waiting to be routed
+     * @param threads number of writing threads
+     * @param outboxCapacity max number of events waiting on a stream
+     * @param sendTimeout max duration of a write on a stream
+     * @param meterRegistry MeterRegistry
+     */
+    public MessageStreams(
+            MessageRepository messageRepository,
+            RentalService rentalService,
+            @Value("${app.messages.stream.timeout}") String timeout,
+            @Value("${app.messages.stream.replay-size}") int replaySize,
+            @Value("${app.messages.stream.queue-capacity}") int queueCapacity,
+            @Value("${app.messages.stream.threads}") int threads,
+            @Value("${app.messages.stream.outbox-capacity}") int outboxCapacity,
+            @Value("${app.messages.stream.send-timeout}") String sendTimeout,
+            MeterRegistry meterRegistry
+    ) {
+        this.messageRepository = messageRepository;
+        this.rentalService = rentalService;
+        this.timeoutMillis = DurationStyle.detectAndParse(timeout).toMillis();
+        this.replaySize = replaySize;
+        this.outboxCapacity = outboxCapacity;
+        this.sendTimeoutNanos = DurationStyle.detectAndParse(sendTimeout).toNanos();
+
+        // One routing thread : messages of an owner reach its outboxes in commit order
+        this.router = new ThreadPoolExecutor(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("message-route-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.monitoredRouter = ExecutorServiceMetrics.monitor(meterRegistry, router, "message-route");
+
+        // Writing tasks are bounded by the number of streams : one waiting task per stream at most
+        this.writers = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("message-stream-")
+        );
+        this.monitoredWriters = ExecutorServiceMetrics.monitor(meterRegistry, writers, "message-stream");
+
+        this.dropped = Counter.builder("messages.stream.dropped")
+                .description("Messages not pushed because routing queue is full")
+                .register(meterRegistry);
+        this.lagging = Counter.builder("messages.stream.lagging")
+                .description("Streams closed because their client did not keep up")
+                .register(meterRegistry);
+        Gauge.builder("messages.stream.open", openStreams, AtomicInteger::get)
+                .description("Open messages streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a messages stream for an owner
+     *
+     * @param ownerId owner ID
+     * @param tokenId ID of the access token opening the stream, null for none
+     * @param lastEventId ID of the last message received on a previous stream, null for none
+     * @param expiresAt expiration date of the access token opening the stream, null for none
+     * @return SseEmitter
+     */
+    public SseEmitter subscribe(int ownerId, String tokenId, Integer lastEventId, Instant expiresAt) {
+        SseEmitter emitter = newEmitter(timeoutMillis(expiresAt));
+        Subscription subscription = new Subscription(ownerId, tokenId, emitter, outboxCapacity);
+        emitter.onTimeout(() -> {
+            detach(subscription);
+            emitter.complete();
+        });
+        emitter.onError(ex -> detach(subscription));
+        emitter.onCompletion(() -> detach(subscription));
+
+        // Messages committed while replaying wait for the replay, then are pushed unless already replayed.
+        // Emitter is not returned yet : replayed events are buffered, not written.
+        synchronized (subscription) {
+            subscriptions.compute(ownerId, (id, owned) -> {
+                Set<Subscription> set = owned == null ? ConcurrentHashMap.newKeySet() : owned;
+                set.add(subscription);
+                return set;
+            });
+            if (tokenId != null) {
+                tokenSubscriptions.compute(tokenId, (id, opened) -> {
+                    Set<Subscription> set = opened == null ? ConcurrentHashMap.newKeySet() : opened;
+                    set.add(subscription);
+                    return set;
+                });
+            }
+            openStreams.incrementAndGet();
+
+            if (lastEventId != null) {
+                replay(subscription, lastEventId);
+            }
+        }
+        return emitter;
+    }
+
+    /**
+     * Push a committed message to the streams of its rental owner.
+     * Returns at once : message is routed by routing thread, or dropped if routing queue is full.
+     *
+     * @param message InboxMessageResponse
+     */
+    public void publish(InboxMessageResponse message) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            monitoredRouter.execute(() -> route(message));
+        } catch (RejectedExecutionException ex) {
+            dropped.increment();
+            log.error("Message " + message.id() + " not pushed : messages routing queue is full");
+        }
+    }
+
+    /**
+     * Close the streams opened with an access token, once revoked.
+     * Streams of the same owner opened with other tokens, on other devices, stay open.
+     *
+     * @param tokenId access token ID
+     */
+    public void close(String tokenId) {
+        Set<Subscription> opened = tokenSubscriptions.get(tokenId);
+        if (opened != null) {
+            opened.forEach(this::close);
+        }
+    }
+
+    /**
+     * Send a comment on all streams, so that idle connections are kept open by proxies,
+     * and closed connections are detected
+     */
+    @Scheduled(
+            fixedDelayString = "${app.messages.stream.heartbeat}",
+            initialDelayString = "${app.messages.stream.heartbeat}"
+    )
+    public void heartbeat() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            monitoredRouter.execute(() -> subscriptions.values().forEach(
+                    owned -> owned.forEach(subscription -> offer(
+                            subscription,
+                            new Outgoing(0, SseEmitter.event().comment(HEARTBEAT_COMMENT))
+                    ))
+            ));
+        } catch (RejectedExecutionException ex) {
+            log.error("Heartbeat skipped : messages routing queue is full");
+        }
+    }
+
+    /**
+     * Close streams whose current write lasts over send timeout.
+     * Their writing thread is released once the write fails, past the container write timeout
+     * (server.tomcat.connection-timeout), meanwhile no event is added to their outbox.
+     */
+    @Scheduled(
+            fixedDelayString = "${app.messages.stream.send-timeout}",
+            initialDelayString = "${app.messages.stream.send-timeout}"
+    )
+    public void closeStalled() {
+        long now = System.nanoTime();
+        subscriptions.values().forEach(owned -> owned.forEach(subscription -> {
+            long since = subscription.sendingSince;
+            if (since != 0 && now - since > sendTimeoutNanos) {
+                lagging.increment();
+                log.error("Messages stream of user " + subscription.ownerId + " closed : write timed out");
+                close(subscription);
+            }
+        }));
+    }
+
+    /**
+     * Close all streams, then stop routing and writing threads
+     */
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.values().forEach(owned -> owned.forEach(this::close));
+        router.shutdown();
+        writers.shutdown();
+        try {
+            if (!router.awaitTermination(10, TimeUnit.SECONDS) || !writers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.error("Messages still being pushed at shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * New stream emitter
+     *
+     * @param timeout stream timeout, in milliseconds
+     * @return SseEmitter
+     */
+    protected SseEmitter newEmitter(long timeout) {
+        return new SseEmitter(timeout);
+    }
+
+    /**
+     * Stream timeout : configured timeout, capped at access token remaining lifetime
+     *
+     * @param expiresAt access token expiration date, null for none
+     * @return milliseconds
+     */
+    private long timeoutMillis(Instant expiresAt) {
+        if (expiresAt == null) {
+            return timeoutMillis;
+        }
+        return Math.max(1, Math.min(timeoutMillis, Duration.between(Instant.now(), expiresAt).toMillis()));
+    }
+
+    /**
+     * Send missed messages, oldest first
+     *
+     * @param subscription Subscription
+     * @param lastEventId ID of the last message received
+     */
+    private void replay(Subscription subscription, int lastEventId) {
+        for (InboxMessageResponse message : messageRepository.findInboxAfterId(
+                subscription.ownerId,
+                lastEventId,
+                PageRequest.ofSize(replaySize)
+        )) {
+            subscription.replayed.add(message.id());
+            send(subscription, new Outgoing(0, event(message)));
+        }
+    }
+
+    /**
+     * Add a message to the outboxes of its rental owner streams
+     *
+     * @param message InboxMessageResponse
+     */
+    private void route(InboxMessageResponse message) {
+        Optional<Integer> optOwnerId = rentalService.getRental(message.rentalId()).map(RentalResponse::ownerId);
+        if (optOwnerId.isEmpty()) {
+            return;
+        }
+        Set<Subscription> owned = subscriptions.get(optOwnerId.get());
+        if (owned == null) {
+            return;
+        }
+        for (Subscription subscription : owned) {
+            offer(subscription, new Outgoing(message.id(), event(message)));
+        }
+    }
+
+    /**
+     * Add an event to a stream outbox, without waiting.
+     * A stream whose outbox is full is closed : its client reconnects, and gets missed messages.
+     *
+     * @param subscription Subscription
+     * @param outgoing Outgoing event
+     */
+    private void offer(Subscription subscription, Outgoing outgoing) {
+        if (subscription.closed.get()) {
+            return;
+        }
+        if (!subscription.outbox.offer(outgoing)) {
+            lagging.increment();
+            log.error("Messages stream of user " + subscription.ownerId + " closed : outbox is full");
+            close(subscription);
+            return;
+        }
+        schedule(subscription);
+    }
+
+    /**
+     * Start writing a stream outbox, unless it is being written already
+     *
+     * @param subscription Subscription
+     */
+    private void schedule(Subscription subscription) {
+        if (subscription.writing.compareAndSet(false, true)) {
+            try {
+                monitoredWriters.execute(() -> write(subscription));
+            } catch (RejectedExecutionException ex) {
+                // Shutting down
+                subscription.writing.set(false);
+                detach(subscription);
+            }
+        }
+    }
+
+    /**
+     * Write a stream outbox until it is empty, on a writing thread.
+     * Closed streams are completed here, after their last write.
+     *
+     * @param subscription Subscription
+     */
+    private void write(Subscription subscription) {
+        try {
+            Outgoing next;
+            while (!subscription.closed.get() && (next = subscription.outbox.poll()) != null) {
+                send(subscription, next);
+            }
+            if (subscription.closed.get() && subscription.completed.compareAndSet(false, true)) {
+                subscription.emitter.complete();
+            }
+        } finally {
+            subscription.writing.set(false);
+        }
+
+        // Events added, or stream closed, after the last check
+        if (subscription.closed.get()
+                ? !subscription.completed.get()
+                : !subscription.outbox.isEmpty()) {
+            schedule(subscription);
+        }
+    }
+
+    /**
+     * Write an event on a stream, and detach the stream if the client is gone
+     *
+     * @param subscription Subscription
+     * @param outgoing Outgoing event
+     */
+    private void send(Subscription subscription, Outgoing outgoing) {
+        synchronized (subscription) {
+            if (outgoing.messageId() != 0 && subscription.replayed.remove(outgoing.messageId())) {
+                return;
+            }
+            subscription.sendingSince = System.nanoTime();
+            try {
+                subscription.emitter.send(outgoing.event());
+            } catch (SocketTimeoutException ex) {
+                // Container gave up the write : client is stalled, the container completes the emitter
+                if (!subscription.closed.get()) {
+                    lagging.increment();
+                    log.error("Messages stream of user " + subscription.ownerId + " closed : write timed out");
+                }
+                detach(subscription);
+            } catch (IOException | IllegalStateException ex) {
+                // Client disconnected, or stream completed : the container completes the emitter
+                log.debug("Messages stream of user " + subscription.ownerId + " closed : " + ex.getMessage());
+                detach(subscription);
+            } finally {
+                subscription.sendingSince = 0;
+            }
+        }
+    }
+
+    /**
+     * Close a stream : detach it, then complete it on its writing thread,
+     * not to wait for a write in progress
+     *
+     * @param subscription Subscription
+     */
+    private void close(Subscription subscription) {
+        detach(subscription);
+        schedule(subscription);
+    }
+
+    /**
+     * Remove a stream : no more event is added to its outbox, and it is not closed by token anymore
+     *
+     * @param subscription Subscription
+     */
+    private void detach(Subscription subscription) {
+        if (!subscription.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscription.outbox.clear();
+        subscriptions.computeIfPresent(subscription.ownerId, (id, owned) -> {
+            if (owned.remove(subscription)) {
+                openStreams.decrementAndGet();
+            }
+            return owned.isEmpty() ? null : owned;
+        });
+        if (subscription.tokenId != null) {
+            tokenSubscriptions.computeIfPresent(subscription.tokenId, (id, opened) -> {
+                opened.remove(subscription);
+                return opened.isEmpty() ? null : opened;
+            });
+        }
+    }
+
+    /**
+     * Message event, with message ID as event ID
+     *
+     * @param message InboxMessageResponse
+     * @return SseEventBuilder
+     */
+    private static SseEmitter.SseEventBuilder event(InboxMessageResponse message) {
+        return SseEmitter.event()
+                .id(String.valueOf(message.id()))
+                .name(MESSAGE_EVENT)
+                .data(message, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Event waiting in a stream outbox
+     *
+     * @param messageId pushed message ID, 0 for other events
+     * @param event SseEventBuilder
+     */
+    private record Outgoing(int messageId, SseEmitter.SseEventBuilder event) {
+    }
+
+    /**
+     * Open stream of an owner
+     * Its lock orders replay and live writes.
+     */
+    private static final class Subscription {
+        private final int ownerId;
+        private final String tokenId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Outgoing> outbox;
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        // IDs of replayed messages, not to be pushed again
+        private final Set<Integer> replayed = new HashSet<>();
+        // Start of current write, from System.nanoTime(), 0 when not writing
+        private volatile long sendingSince;
+
+        /**
+         * Constructor for Subscription class
+         *
+         * @param ownerId owner ID
+         * @param tokenId ID of the access token opening the stream, null for none
+         * @param emitter SseEmitter
+         * @param outboxCapacity max number of waiting events
+         */
+        private Subscription(int ownerId, String tokenId, SseEmitter emitter, int outboxCapacity) {
+            this.ownerId = ownerId;
+            this.tokenId = tokenId;
+            this.emitter = emitter;
+            this.outbox = new ArrayBlockingQueue<>(outboxCapacity);
+        }
+    }
+}
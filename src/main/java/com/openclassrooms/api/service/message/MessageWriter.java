@@ -0,0 +1,322 @@
+package com.openclassrooms.api.service.message;
+
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind messages writer
+ * Sent messages wait in a bounded queue. A single writer thread takes all waiting messages,
+ * up to batch size, and inserts them with a JDBC batch in one transaction : messages sent while
+ * a batch commits share the next commit. When the queue is full, messages are rejected.
+ */
+@Slf4j
+@Service
+public class MessageWriter {
+    private static final String INSERT_MESSAGE = """
+            INSERT INTO MESSAGES (rental_id, user_id, message, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread writer;
+    private final Counter commits;
+    private final Counter rejections;
+    private final DistributionSummary batchSizes;
+    private volatile boolean accepting = true;
+
+    /**
+     * Constructor for MessageWriter class
+     *
+     * @param jdbcTemplate JdbcTemplate
+     * @param transactionTemplate TransactionTemplate
+     * @param enabled true to write messages behind, false to insert each message on its own
+     * @param queueCapacity max number of waiting messages
+     * @param batchSize max number of messages inserted per transaction
+     * @param meterRegistry MeterRegistry
+     */
+    public MessageWriter(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${app.messages.write-behind.enabled}") boolean enabled,
+            @Value("${app.messages.write-behind.queue-capacity}") int queueCapacity,
+            @Value("${app.messages.write-behind.batch-size}") int batchSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new CustomizableThreadFactory("message-writer-").newThread(this::drain);
+
+        this.commits = Counter.builder("messages.write.commits")
+                .description("Transactions committed by messages writer")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("messages.write.rejections")
+                .description("Messages rejected because messages queue is full")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("messages.write.batch.size")
+                .description("Messages inserted per transaction")
+                .register(meterRegistry);
+        Gauge.builder("messages.write.queue", queue, BlockingQueue::size)
+                .description("Messages waiting to be inserted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start writer thread, when write-behind is enabled
+     */
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Check if messages are written behind
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a message
+     *
+     * @param messageBody String
+     * @param userId recipient ID
+     * @param rentalId associated rental
+     * @return CompletableFuture completed once message batch is committed :
+     * Optional of inserted message, empty if user or rental does not exist
+     * @throws RejectedExecutionException if queue is full, or writer is stopping
+     */
+    public CompletableFuture<Optional<InboxMessageResponse>> enqueue(String messageBody, int userId, int rentalId) {
+        PendingMessage message = new PendingMessage(
+                messageBody,
+                userId,
+                rentalId,
+                // Database timestamps precision : pushed message holds the saved date
+                Instant.now().truncatedTo(ChronoUnit.MICROS),
+                new CompletableFuture<>()
+        );
+        if (!accepting || !queue.offer(message)) {
+            rejections.increment();
+            throw new RejectedExecutionException("Messages queue is full");
+        }
+        return message.committed();
+    }
+
+    /**
+     * Stop accepting messages, then insert waiting messages before shutdown.
+     * Web server has already stopped taking requests.
+     */
+    @PreDestroy
+    public void shutdown() {
+        accepting = false;
+        if (writer.isAlive()) {
+            try {
+                writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Messages left by a stopped, or too slow, writer
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writer thread loop : insert waiting messages by batches, until writer stops and queue is empty
+     */
+    private void drain() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (accepting || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Insert a batch of messages in one transaction.
+     * If a message refers to an unknown user or rental, messages are inserted one by one,
+     * so that only faulty messages are rejected.
+     *
+     * @param batch messages
+     */
+    private void write(List<PendingMessage> batch) {
+        try {
+            List<Integer> ids = transactionTemplate.execute(status -> insert(batch));
+            commits.increment();
+            batchSizes.record(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(ids.get(i));
+            }
+        } catch (DataIntegrityViolationException ex) {
+            log.error("Messages batch rejected, inserting one by one : " + ex.getMostSpecificCause().getMessage());
+            batch.forEach(this::writeOne);
+        } catch (RuntimeException ex) {
+            log.error("Messages batch insert failed : " + ex.getMessage());
+            batch.forEach(message -> message.committed().completeExceptionally(ex));
+        }
+    }
+
+    /**
+     * Insert a single message in its own transaction
+     *
+     * @param message PendingMessage
+     */
+    private void writeOne(PendingMessage message) {
+        try {
+            List<Integer> ids = transactionTemplate.execute(status -> insert(List.of(message)));
+            commits.increment();
+            batchSizes.record(1);
+            message.complete(ids.get(0));
+        } catch (DataIntegrityViolationException ex) {
+            log.error("User " + message.userId() + " or Rental " + message.rentalId() + " not found : "
+                    + ex.getMostSpecificCause().getMessage());
+            message.committed().complete(Optional.empty());
+        } catch (RuntimeException ex) {
+            log.error("Message insert failed : " + ex.getMessage());
+            message.committed().completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Insert messages with a JDBC batch
+     *
+     * @param messages messages
+     * @return generated IDs, in messages order
+     */
+    private List<Integer> insert(List<PendingMessage> messages) {
+        final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone(ZoneOffset.UTC));
+
+        // JdbcTemplate batch updates do not return generated keys before Spring 6.1
+        return jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    INSERT_MESSAGE,
+                    Statement.RETURN_GENERATED_KEYS
+            )) {
+                for (PendingMessage message : messages) {
+                    setMessage(statement, message, utc);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                List<Integer> ids = new ArrayList<>(messages.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getInt(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    /**
+     * Bind a message to insert statement
+     *
+     * @param statement PreparedStatement
+     * @param message PendingMessage
+     * @param utc UTC calendar
+     * @throws SQLException SQLException
+     */
+    private static void setMessage(PreparedStatement statement, PendingMessage message, Calendar utc)
+            throws SQLException {
+        final Timestamp sentAt = Timestamp.from(message.sentAt());
+        statement.setInt(1, message.rentalId());
+        statement.setInt(2, message.userId());
+        statement.setString(3, message.messageBody());
+        statement.setTimestamp(4, sentAt, utc);
+        statement.setTimestamp(5, sentAt, utc);
+    }
+
+    /**
+     * Message waiting to be inserted
+     *
+     * @param messageBody String
+     * @param userId recipient ID
+     * @param rentalId associated rental
+     * @param sentAt send date, saved as creation date
+     * @param committed completed once inserted
+     */
+    private record PendingMessage(
+            String messageBody,
+            int userId,
+            int rentalId,
+            Instant sentAt,
+            CompletableFuture<Optional<InboxMessageResponse>> committed
+    ) {
+
+        /**
+         * Complete with inserted message
+         *
+         * @param id generated ID
+         */
+        void complete(int id) {
+            committed.complete(Optional.of(InboxMessageResponse.builder()
+                    .id(id)
+                    .rentalId(rentalId)
+                    .userId(userId)
+                    .message(messageBody)
+                    .createdAt(sentAt)
+                    .build()));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.openclassrooms.api.service.search;
+
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.repository.RentalRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-process inverted index over Rental name and description.
+ * Built at startup from RENTALS table, then kept up to date by RentalService on each save and update.
+ * Scoring is a saturated term frequency, weighted by inverse document frequency, name terms counting more.
+ */
+@Slf4j
+@Component
+public class RentalSearchIndex {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final float NAME_BOOST = 3.0f;
+
+    private final RentalRepository rentalRepository;
+
+    // term -> (rental ID -> term weight in rental)
+    private final Map<String, Map<Integer, Float>> postings = new ConcurrentHashMap<>();
+
+    // rental ID -> indexed terms, to remove them on update
+    private final Map<Integer, Set<String>> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for RentalSearchIndex class
+     *
+     * @param rentalRepository RentalRepository
+     */
+    public RentalSearchIndex(RentalRepository rentalRepository) {
+        this.rentalRepository = rentalRepository;
+    }
+
+    /**
+     * Index all rentals, once application is started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void build() {
+        try (Stream<RentalResponse> rentals = rentalRepository.streamAll()) {
+            rentals.forEach(rental -> index(rental.id(), rental.name(), rental.description()));
+        }
+        log.info(documents.size() + " rentals indexed, " + postings.size() + " terms");
+    }
+
+    /**
+     * Index a rental, replacing its previous version if any
+     *
+     * @param id Rental ID
+     * @param name Rental name
+     * @param description Rental description
+     */
+    public void index(int id, String name, String description) {
+
+        Map<String, Float> weights = new HashMap<>();
+        tokenize(name).forEach(term -> weights.merge(term, NAME_BOOST, Float::sum));
+        tokenize(description).forEach(term -> weights.merge(term, 1.0f, Float::sum));
+
+        // Updates of the same rental are serialized by the documents map
+        documents.compute(id, (docId, previousTerms) -> {
+            if (previousTerms != null) {
+                previousTerms.stream()
+                        .filter(term -> !weights.containsKey(term))
+                        .forEach(term -> removePosting(term, docId));
+            }
+            weights.forEach((term, weight) -> postings.compute(term, (t, docs) -> {
+                Map<Integer, Float> rentals = docs == null ? new ConcurrentHashMap<>() : docs;
+                rentals.put(docId, weight);
+                return rentals;
+            }));
+            return Set.copyOf(weights.keySet());
+        });
+    }
+
+    /**
+     * Search rentals matching at least one term of the query
+     *
+     * @param query search query
+     * @param offset number of results to skip
+     * @param limit max number of results
+     * @return rental IDs, ordered by decreasing relevance
+     */
+    public List<Integer> search(String query, int offset, int limit) {
+
+        final int indexedCount = Math.max(1, documents.size());
+        Map<Integer, Float> scores = new HashMap<>();
+
+        tokenize(query).distinct().forEach(term -> {
+            Map<Integer, Float> docs = postings.get(term);
+            if (docs == null) {
+                return;
+            }
+            float idf = (float) Math.log(1.0 + (double) indexedCount / docs.size());
+            docs.forEach((id, weight) -> scores.merge(id, idf * weight / (weight + 1.0f), Float::sum));
+        });
+
+        // Keep best offset + limit results only
+        Comparator<Map.Entry<Integer, Float>> relevance = Map.Entry.<Integer, Float>comparingByValue()
+                .reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Integer, Float>> best = new PriorityQueue<>(relevance.reversed());
+        for (Map.Entry<Integer, Float> score : scores.entrySet()) {
+            best.offer(score);
+            if (best.size() > offset + limit) {
+                best.poll();
+            }
+        }
+
+        List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(best);
+        ranked.sort(relevance);
+        return ranked.stream()
+                .skip(offset)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Remove a rental from a term postings, and the term if no rental has it anymore
+     *
+     * @param term indexed term
+     * @param id Rental ID
+     */
+    private void removePosting(String term, int id) {
+        postings.computeIfPresent(term, (t, docs) -> {
+            docs.remove(id);
+            return docs.isEmpty() ? null : docs;
+        });
+    }
+
+    /**
+     * Split a text into lower case terms, without accents
+     *
+     * @param text String
+     * @return Stream of terms
+     */
+    private static Stream<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return Stream.empty();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.splitAsStream(normalized.toLowerCase(Locale.ROOT))
+                .filter(term -> !term.isEmpty());
+    }
+}
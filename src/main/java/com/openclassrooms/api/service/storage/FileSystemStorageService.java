@@ -10,6 +10,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
@@ -88,6 +89,28 @@ public class FileSystemStorageService implements StorageService {
         }
     }
 
+    /**
+     * Check a file was stored in filesystem
+     *
+     * @param filename name of stored file
+     * @param subDir subdirectory of stored file
+     * @return true if file exists in subdirectory
+     */
+    @Override
+    public boolean exists(String filename, String subDir) {
+        try {
+            final Path directory = this.rootLocation.resolve(Path.of(subDir)).normalize().toAbsolutePath();
+            final Path file = directory.resolve(Path.of(filename)).normalize().toAbsolutePath();
+
+            // Security check : only files stored in subdirectory
+            return file.getParent().equals(directory) && Files.isRegularFile(file);
+
+        } catch (InvalidPathException | SecurityException ex) {
+            log.error("Invalid stored file " + filename + " : " + ex.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Return an unique filename for a file
      *
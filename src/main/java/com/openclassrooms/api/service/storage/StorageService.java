@@ -11,4 +11,6 @@ public interface StorageService {
 
     String store(MultipartFile file, String subDir);
 
+    boolean exists(String filename, String subDir);
+
 }
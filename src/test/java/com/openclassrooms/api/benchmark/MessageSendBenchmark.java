@@ -0,0 +1,142 @@
+package com.openclassrooms.api.benchmark;
+
+import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.MessageRepository;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.MessageService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.function.IntPredicate;
+
+/**
+ * Throughput of sent messages :
+ * user and rental loaded before the insert, versus references checked by MESSAGES foreign keys.
+ * Run with : ./mvnw test -Dtest=MessageSendBenchmark -Dbenchmark=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MessageSendBenchmark {
+
+    private static final int MESSAGES = 20_000;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 3;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+        rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(owner)
+                        .build()
+        );
+    }
+
+    @AfterEach
+    void teardown() {
+        jdbcTemplate.update("DELETE FROM MESSAGES");
+        rentalRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void referencesShouldSendMoreMessagesThanLookups() {
+
+        double lookups = messagesPerSecond(i -> {
+            // Previous implementation : user and rental loaded, then message inserted
+            User user = userRepository.findById(owner.getId()).orElseThrow();
+            Rental found = rentalRepository.findById(rental.getId()).orElseThrow();
+            messageRepository.save(Message.builder().message("message " + i).user(user).rental(found).build());
+            return true;
+        });
+
+        double references = messagesPerSecond(i ->
+                messageService.sendMessage("message " + i, owner.getId(), rental.getId())
+        );
+
+        System.out.printf(
+                "Messages per second : lookups = %.0f, references = %.0f (x%.2f)%n",
+                lookups,
+                references,
+                references / lookups
+        );
+
+        Assertions.assertThat(references).isGreaterThan(lookups);
+    }
+
+    /**
+     * Best throughput of a message send
+     *
+     * @param send message send, for a message index
+     * @return messages per second
+     */
+    private double messagesPerSecond(IntPredicate send) {
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sendAll(send);
+        }
+
+        double best = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long nanos = sendAll(send);
+            best = Math.max(best, MESSAGES * 1e9 / nanos);
+        }
+        return best;
+    }
+
+    /**
+     * Send all messages
+     *
+     * @param send message send
+     * @return elapsed nanoseconds
+     */
+    private long sendAll(IntPredicate send) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            Assertions.assertThat(send.test(i)).isTrue();
+        }
+        long nanos = System.nanoTime() - start;
+        jdbcTemplate.update("DELETE FROM MESSAGES");
+        return nanos;
+    }
+}
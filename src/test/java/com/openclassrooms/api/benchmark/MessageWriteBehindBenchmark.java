@@ -0,0 +1,177 @@
+package com.openclassrooms.api.benchmark;
+
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.MessageService;
+import com.openclassrooms.api.service.message.MessageDurability;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Messages and commits per second, under concurrent senders :
+ * one transaction per message, versus write-behind group commit.
+ * Run with : ./mvnw test -Dtest=MessageWriteBehindBenchmark -Dbenchmark=true
+ */
+@SpringBootTest(properties = "app.messages.write-behind.enabled=true")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MessageWriteBehindBenchmark {
+
+    private static final int SENDERS = 32;
+    private static final int MESSAGES_PER_SENDER = 1_000;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 3;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+        rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(owner)
+                        .build()
+        );
+    }
+
+    @AfterEach
+    void teardown() {
+        jdbcTemplate.update("DELETE FROM MESSAGES");
+        rentalRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void groupCommitShouldCommitLessThanOncePerMessage() throws Exception {
+        final int messages = SENDERS * MESSAGES_PER_SENDER;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sendAll(this::sendOnItsOwn);
+            sendAll(this::sendWrittenBehind);
+        }
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long directNanos = sendAll(this::sendOnItsOwn);
+
+            double commitsBefore = commits();
+            long behindNanos = sendAll(this::sendWrittenBehind);
+            double behindCommits = commits() - commitsBefore;
+
+            System.out.printf(
+                    "One commit per message : %.0f messages/s, %.0f commits/s"
+                            + " - write-behind : %.0f messages/s, %.0f commits/s, %.1f messages per commit%n",
+                    messages * 1e9 / directNanos,
+                    messages * 1e9 / directNanos,
+                    messages * 1e9 / behindNanos,
+                    behindCommits * 1e9 / behindNanos,
+                    messages / behindCommits
+            );
+
+            Assertions.assertThat(behindCommits).isLessThan(messages);
+        }
+    }
+
+    /**
+     * Insert a message in its own transaction
+     *
+     * @param i message index
+     */
+    private void sendOnItsOwn(int i) {
+        Assertions.assertThat(messageService.sendMessage("message " + i, owner.getId(), rental.getId())).isTrue();
+    }
+
+    /**
+     * Queue a message, and wait for its batch commit
+     *
+     * @param i message index
+     */
+    private void sendWrittenBehind(int i) {
+        Assertions.assertThat(
+                messageService.sendMessage("message " + i, owner.getId(), rental.getId(), MessageDurability.COMMITTED)
+                        .join()
+        ).contains(MessageDurability.COMMITTED);
+    }
+
+    /**
+     * Commits counted by messages writer
+     *
+     * @return double
+     */
+    private double commits() {
+        return meterRegistry.get("messages.write.commits").counter().count();
+    }
+
+    /**
+     * Send all messages from concurrent senders
+     *
+     * @param send message send, for a message index
+     * @return elapsed nanoseconds
+     * @throws Exception Exception
+     */
+    private long sendAll(IntConsumer send) throws Exception {
+        ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+        try {
+            List<Future<?>> results = new ArrayList<>(SENDERS);
+            long start = System.nanoTime();
+            for (int s = 0; s < SENDERS; s++) {
+                results.add(senders.submit(() -> {
+                    for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+                        send.accept(i);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long nanos = System.nanoTime() - start;
+            jdbcTemplate.update("DELETE FROM MESSAGES");
+            return nanos;
+        } finally {
+            senders.shutdown();
+        }
+    }
+}
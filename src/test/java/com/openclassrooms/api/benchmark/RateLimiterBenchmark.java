@@ -0,0 +1,50 @@
+package com.openclassrooms.api.benchmark;
+
+import com.openclassrooms.api.configuration.ratelimit.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+
+/**
+ * Cost of one rate limiter decision, on already tracked keys.
+ * Run with : ./mvnw test -Dtest=RateLimiterBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RateLimiterBenchmark {
+
+    private static final int KEYS = 10_000;
+    private static final int OPERATIONS = 10_000_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    void measureTryAcquire() {
+        RateLimiter limiter = new RateLimiter(20, Duration.ofMinutes(1), 100_000);
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            run(limiter, keys);
+        }
+        for (int i = 0; i < ITERATIONS; i++) {
+            long nanos = run(limiter, keys);
+            System.out.printf("tryAcquire : %.1f ns/op%n", (double) nanos / OPERATIONS);
+        }
+    }
+
+    private static long run(RateLimiter limiter, String[] keys) {
+        long allowed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (limiter.tryAcquire(keys[i % KEYS], System.nanoTime()) == 0) {
+                allowed++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println("allowed : " + allowed);
+        return nanos;
+    }
+}
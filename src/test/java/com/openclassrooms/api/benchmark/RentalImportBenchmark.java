@@ -0,0 +1,105 @@
+package com.openclassrooms.api.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.TestExecutionEvent;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Throughput of rentals import, from NDJSON request to committed rows.
+ * Run with : ./mvnw test -Dtest=RentalImportBenchmark -Dbenchmark=true
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithUserDetails(value = "owner@test.com", setupBefore = TestExecutionEvent.TEST_EXECUTION)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RentalImportBenchmark {
+
+    private static final int ROWS = 50_000;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @BeforeEach
+    void init() {
+        userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+    }
+
+    @AfterEach
+    void teardown() {
+        rentalRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void importRentals() throws Exception {
+
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            ndjson.append("{\"name\":\"rental ").append(i)
+                    .append("\",\"surface\":").append(20 + i % 100)
+                    .append(",\"price\":").append(100 + i % 1000)
+                    .append(",\"picture\":\"https://images.test/rental").append(i)
+                    .append(".jpg\",\"description\":\"description of rental ").append(i)
+                    .append("\"}\n");
+        }
+        byte[] body = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            importAll(body);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            importAll(body);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Imported rentals per second : %.0f%n", ITERATIONS * ROWS / seconds);
+    }
+
+    /**
+     * Import all rows once
+     *
+     * @param body NDJSON rows
+     * @throws Exception Exception
+     */
+    private void importAll(byte[] body) throws Exception {
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(ROWS));
+    }
+}
@@ -0,0 +1,130 @@
+package com.openclassrooms.api.benchmark;
+
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
+import com.openclassrooms.api.model.response.rental.RentalResponse;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Allocations per row when reading rentals :
+ * managed entities mapped through a ConversionService, versus RentalResponse projections.
+ * Run with : ./mvnw test -Dtest=RentalReadAllocationBenchmark -Dbenchmark=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RentalReadAllocationBenchmark {
+
+    private static final int ROWS = 5_000;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 20;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final GenericConversionService conversionService = new GenericConversionService();
+
+    @BeforeEach
+    void init() {
+        conversionService.addConverter(new RentalToRentalResponse());
+
+        User owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+
+        List<Rental> rentals = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rentals.add(Rental.builder()
+                    .name("rental " + i)
+                    .surface(BigDecimal.valueOf(20L + i % 100))
+                    .price(BigDecimal.valueOf(100L + i % 1000))
+                    .picture("http://localhost/images/rental" + i + ".jpg")
+                    .description("description of rental " + i)
+                    .owner(owner)
+                    .build());
+        }
+        rentalRepository.saveAllAndFlush(rentals);
+    }
+
+    @AfterEach
+    void teardown() {
+        rentalRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void projectionShouldAllocateLessPerRowThanEntities() {
+
+        long entityBytes = bytesPerRow(() -> transactionTemplate.execute(status -> {
+            List<RentalResponse> responses = new ArrayList<>(ROWS);
+            for (Rental rental : rentalRepository.findAll()) {
+                responses.add(conversionService.convert(rental, RentalResponse.class));
+            }
+            return responses;
+        }));
+
+        long projectionBytes = bytesPerRow(() -> transactionTemplate.execute(status ->
+                rentalRepository.findPage(RentalFilter.NONE, RentalSort.DEFAULT, null, ROWS).getContent()
+        ));
+
+        System.out.printf(
+                "Allocated bytes per row : entity + ConversionService = %d, projection = %d (%.1f%%)%n",
+                entityBytes,
+                projectionBytes,
+                100.0 * projectionBytes / entityBytes
+        );
+
+        Assertions.assertThat(projectionBytes).isLessThan(entityBytes);
+    }
+
+    /**
+     * Average bytes allocated by current thread per row read
+     *
+     * @param read read of all rows
+     * @return long
+     */
+    private long bytesPerRow(Supplier<List<RentalResponse>> read) {
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            Assertions.assertThat(read.get()).hasSize(ROWS);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.get();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / ((long) ITERATIONS * ROWS);
+    }
+}
@@ -1,4 +1,4 @@
-package com.openclassrooms.api.configuration.converter;
+package com.openclassrooms.api.benchmark;
 
 import com.openclassrooms.api.model.entity.Rental;
 import com.openclassrooms.api.model.response.rental.RentalResponse;
@@ -6,8 +6,9 @@ import org.springframework.core.convert.converter.Converter;
 
 /**
  * Convert Rental to RentalResponse
+ * Former mapping of rental reads, kept as the entity baseline of RentalReadAllocationBenchmark.
  */
-public class RentalToRentalResponse implements Converter<Rental, RentalResponse> {
+class RentalToRentalResponse implements Converter<Rental, RentalResponse> {
 
     /**
      * Convert Rental to RentalResponse
@@ -1,21 +1,42 @@
 package com.openclassrooms.api.controller.integration;
 
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.api.configuration.CacheConfig;
 import com.openclassrooms.api.model.entity.User;
 import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.AuthentificationService;
+import com.openclassrooms.api.service.UserService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -27,6 +48,15 @@ class AuthentificationControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AuthentificationService authentificationService;
+
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
 
@@ -45,6 +75,7 @@ class AuthentificationControllerTest {
     @AfterEach
     void teardown() {
         userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
     }
 
     @Test
@@ -54,7 +85,7 @@ class AuthentificationControllerTest {
             {"email":"new@test.com","name":"test TEST","password":"test!31"}
             """;
 
-        mockMvc.perform(post("/api/auth/register")
+        performAsync(mockMvc, post("/api/auth/register")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON)
                         .content(jsonNewUser))
@@ -64,10 +95,41 @@ class AuthentificationControllerTest {
 
 
 
+    @Test
+    void shouldRegisterSameEmailOnlyOnceWhenConcurrent() throws Exception {
+        int requests = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                statuses.add(executor.submit(() -> performAsync(mockMvc, post("/api/auth/register")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .accept(MediaType.APPLICATION_JSON)
+                                .content("""
+                                        {"email":"race@test.com","name":"test TEST","password":"test!31"}
+                                        """))
+                        .andReturn()
+                        .getResponse()
+                        .getStatus()));
+            }
+
+            List<Integer> results = new ArrayList<>();
+            for (Future<Integer> status : statuses) {
+                results.add(status.get());
+            }
+            assertThat(results).containsOnlyOnce(200);
+            assertThat(results).filteredOn(status -> status == 400).hasSize(requests - 1);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(userRepository.findByEmail("race@test.com")).isPresent();
+    }
+
     @ParameterizedTest
     @MethodSource("com.openclassrooms.api.controller.AuthentificationParams#badRequestWhenRegisterTestData")
     void shouldNotRegisterUser(String jsonUser) throws Exception {
-        mockMvc.perform(post("/api/auth/register")
+        performAsync(mockMvc, post("/api/auth/register")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON)
                         .content(jsonUser))
@@ -76,7 +138,7 @@ class AuthentificationControllerTest {
 
     @Test
     void shouldNotRegisterNoContent() throws Exception {
-        mockMvc.perform(post("/api/auth/register")
+        performAsync(mockMvc, post("/api/auth/register")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
         ).andExpect(status().isBadRequest());
@@ -89,7 +151,7 @@ class AuthentificationControllerTest {
             {"email":"test@test.com","password":"test!31"}
             """;
 
-        mockMvc.perform(post("/api/auth/login")
+        performAsync(mockMvc, post("/api/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON)
                         .content(jsonString))
@@ -97,9 +159,36 @@ class AuthentificationControllerTest {
                 .andExpect(jsonPath("$.token").isNotEmpty());
     }
 
+    @Test
+    void shouldHashPasswordAgainWithConfiguredCostOnLogin() throws Exception {
+
+        // Password of test user was hashed with default cost 10, tests are configured with cost 4
+        assertThat(userRepository.findByEmail("test@test.com").orElseThrow().getPassword()).startsWith("$2a$10$");
+
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+
+        assertThat(userRepository.findByEmail("test@test.com").orElseThrow().getPassword()).startsWith("$2a$04$");
+
+        // Password still matches after it was hashed again
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isNotEmpty());
+    }
+
     @Test
     void shouldNotLoginNoContent() throws Exception {
-        mockMvc.perform(post("/api/auth/login")
+        performAsync(mockMvc, post("/api/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
@@ -109,7 +198,7 @@ class AuthentificationControllerTest {
     @ParameterizedTest
     @MethodSource("com.openclassrooms.api.controller.AuthentificationParams#unauthorizedWhenLoginTestData")
     void shouldNotLoginUser(String jsonCredentials) throws Exception {
-        mockMvc.perform(post("/api/auth/login")
+        performAsync(mockMvc, post("/api/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON)
                         .content(jsonCredentials))
@@ -117,4 +206,391 @@ class AuthentificationControllerTest {
                 .andExpect(jsonPath("$.message").value("Invalid credentials"));
     }
 
+    @Test
+    void shouldNotShareCachedUsers() {
+        User user = authentificationService.authUser("test@test.com").orElseThrow();
+        user.setPassword("changed");
+        user.setName("changed");
+
+        // Cache holds an immutable snapshot : changing a User read from it does not change it
+        Cache.ValueWrapper cached = cacheManager.getCache(CacheConfig.USERS_CACHE).get("test@test.com");
+        assertThat(cached).isNotNull();
+        assertThat(cached.get()).isInstanceOf(UserService.CachedUser.class);
+        User again = authentificationService.authUser("test@test.com").orElseThrow();
+        assertThat(again).isNotSameAs(user);
+        assertThat(again.getName()).isEqualTo("test TEST");
+        assertThat(again.getPassword()).isNotEqualTo("changed");
+    }
+
+    @Test
+    void shouldCacheUnknownEmailUntilRegistered() throws Exception {
+        String jsonCredentials = """
+            {"email":"new@test.com","password":"test!31"}
+            """;
+
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(jsonCredentials))
+                .andExpect(status().isUnauthorized());
+
+        // Unknown email is cached as a null value
+        Cache.ValueWrapper unknown = cacheManager.getCache(CacheConfig.USERS_CACHE).get("new@test.com");
+        assertThat(unknown).isNotNull();
+        assertThat(unknown.get()).isNull();
+
+        // Registering evicts it
+        performAsync(mockMvc, post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"new@test.com","name":"test TEST","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(jsonCredentials))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isNotEmpty());
+    }
+
+    @Test
+    void shouldLoginWhateverEmailCasing() throws Exception {
+        String jsonCredentials = """
+            {"email":"casing@test.com","password":"test!31"}
+            """;
+
+        // Unknown email is cached as a null value
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(jsonCredentials))
+                .andExpect(status().isUnauthorized());
+
+        // Registering with another casing evicts it
+        performAsync(mockMvc, post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"Casing@Test.com","name":"test TEST","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(jsonCredentials))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isNotEmpty());
+
+        // Every casing is the same cache entry
+        assertThat(cacheManager.getCache(CacheConfig.USERS_CACHE).get("casing@test.com")).isNotNull();
+        assertThat(cacheManager.getCache(CacheConfig.USERS_CACHE).get("Casing@Test.com")).isNull();
+    }
+
+    @Test
+    void shouldAuthenticateWithSameTokenAgain() throws Exception {
+        String body = performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String token = new ObjectMapper().readTree(body).get("token").asText();
+
+        // Second request is served from verified tokens
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/api/auth/me")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.email").value("test@test.com"));
+        }
+
+        // Same claims with another signature are not taken from verified tokens
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA" + token.substring(token.lastIndexOf('.') + 5);
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + forged)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void shouldShowUserDetailsFromTokenClaims() throws Exception {
+        String body = performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String token = new ObjectMapper().readTree(body).get("token").asText();
+
+        // Profile is read from the token, not from the database
+        userRepository.deleteAll();
+
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").isNumber())
+                .andExpect(jsonPath("$.name").value("test TEST"))
+                .andExpect(jsonPath("$.email").value("test@test.com"))
+                .andExpect(jsonPath("$.created_at").isNotEmpty())
+                .andExpect(jsonPath("$.updated_at").isNotEmpty());
+    }
+
+    @Test
+    void shouldRejectTooManyLoginsForSameEmail() throws Exception {
+        // Test limit is 20 requests per minute and email, whatever its case
+        for (int i = 0; i < 20; i++) {
+            performAsync(mockMvc, post("/api/auth/login")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content("{\"email\":\"" + (i % 2 == 0 ? "limited@test.com" : " Limited@Test.com") + "\",\"password\":\"test!31\"}"))
+                    .andExpect(status().isUnauthorized());
+        }
+
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"LIMITED@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        // Other emails are not limited
+        performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldRejectTooLargeLoginBody() throws Exception {
+        // Test limit is 4KB : body is not read
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"test@test.com\",\"password\":\"" + "x".repeat(5000) + "\"}"))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void shouldCheckEmailAvailability() throws Exception {
+        Counter definitelyFree = meterRegistry.counter("email.filter.checks", "result", "definitely_free");
+        double before = definitelyFree.count();
+
+        // Never registered : answered by the Bloom filter
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "available@test.com")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.available").value(true));
+        assertThat(definitelyFree.count()).isEqualTo(before + 1);
+
+        performAsync(mockMvc, post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"available@test.com","name":"test TEST","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+
+        // Registered : found in the Bloom filter, then confirmed
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "available@test.com")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.available").value(false));
+        assertThat(definitelyFree.count()).isEqualTo(before + 1);
+
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "available")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldCheckEmailAvailabilityWhateverItsAccentsAndCase() throws Exception {
+        Counter definitelyFree = meterRegistry.counter("email.filter.checks", "result", "definitely_free");
+
+        performAsync(mockMvc, post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"cafe@test.com","name":"test TEST","password":"test!31"}
+                                """))
+                .andExpect(status().isOk());
+        double before = definitelyFree.count();
+
+        // Equal to the registered email in MySQL : not answered by the Bloom filter
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "CAFÉ@test.com")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        assertThat(definitelyFree.count()).isEqualTo(before);
+    }
+
+    @Test
+    void shouldRejectTooManyEmailAvailabilityChecksFromSameIp() throws Exception {
+        // Test limit is 10 requests per minute and client IP
+        for (int i = 0; i < 10; i++) {
+            mockMvc.perform(get("/api/auth/email-available")
+                            .param("email", "guess" + i + "@test.com")
+                            .with(remoteAddr("10.0.0.1"))
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "guess@test.com")
+                        .with(remoteAddr("10.0.0.1"))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        // Other clients are not limited
+        mockMvc.perform(get("/api/auth/email-available")
+                        .param("email", "guess@test.com")
+                        .with(remoteAddr("10.0.0.2"))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldNotServeActuatorEndpointsToUsers() throws Exception {
+        String token = loginTokens().get("token").asText();
+
+        // Actuator endpoints are served on management port only
+        mockMvc.perform(get("/actuator/metrics")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldRefreshTokensOnlyOnce() throws Exception {
+        JsonNode tokens = loginTokens();
+        String refreshToken = tokens.get("refresh_token").asText();
+
+        String body = mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"" + refreshToken + "\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isNotEmpty())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        JsonNode refreshed = new ObjectMapper().readTree(body);
+        assertThat(refreshed.get("refresh_token").asText()).isNotEqualTo(refreshToken);
+
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + refreshed.get("token").asText())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        // Used refresh token is refused, and revokes every refresh token of the user
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"" + refreshToken + "\"}"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"" + refreshed.get("refresh_token").asText() + "\"}"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"unknown\"}"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void shouldRevokeTokensOnLogout() throws Exception {
+        JsonNode tokens = loginTokens();
+        String token = tokens.get("token").asText();
+
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        MvcResult stream = mockMvc.perform(get("/api/messages/stream")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(post("/api/auth/logout")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"" + tokens.get("refresh_token").asText() + "\"}"))
+                .andExpect(status().isOk());
+
+        // Messages streams are closed
+        stream.getAsyncResult(5_000);
+
+        // Access token is still valid and cached as verified, but revoked
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"refresh_token\":\"" + tokens.get("refresh_token").asText() + "\"}"))
+                .andExpect(status().isUnauthorized());
+
+        // Other tokens of the user are still valid
+        mockMvc.perform(get("/api/auth/me")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + loginTokens().get("token").asText())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    private JsonNode loginTokens() throws Exception {
+        String body = performAsync(mockMvc, post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email":"test@test.com","password":"test!31"}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refresh_token").isNotEmpty())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        return new ObjectMapper().readTree(body);
+    }
+
+    /**
+     * Request sent from a client IP
+     *
+     * @param address client IP
+     * @return RequestPostProcessor
+     */
+    private static RequestPostProcessor remoteAddr(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
 }
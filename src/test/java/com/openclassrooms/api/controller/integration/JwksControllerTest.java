@@ -0,0 +1,230 @@
+package com.openclassrooms.api.controller.integration;
+
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.UserRepository;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.PublicJwk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.ResourceUtils;
+
+import java.io.InputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+class JwksControllerTest {
+
+    private static final String KEYSTORE = "classpath:jwt-keys.p12";
+    private static final String KEYSTORE_PASSWORD = "changeit";
+
+    @SpringBootTest(properties = {
+            "app.jwt.keystore.path=" + KEYSTORE,
+            "app.jwt.keystore.password=" + KEYSTORE_PASSWORD,
+            "app.jwt.keystore.active-key=2026-10"
+    })
+    @AutoConfigureMockMvc
+    @Nested
+    class AsymmetricSigningTest {
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private UserRepository userRepository;
+
+        @Autowired
+        private CacheManager cacheManager;
+
+        @Value("${app.jwt.issuer}")
+        private String issuer;
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+
+        private User user;
+
+        @BeforeEach
+        void init() {
+            user = userRepository.saveAndFlush(
+                    User.builder()
+                            .email("test@test.com")
+                            .name("test TEST")
+                            .password(new BCryptPasswordEncoder(4).encode("test!31"))
+                            .build()
+            );
+        }
+
+        @AfterEach
+        void teardown() {
+            userRepository.deleteAll();
+            cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        }
+
+        @Test
+        void shouldPublishPublicKeysOnly() throws Exception {
+            mockMvc.perform(get("/.well-known/jwks.json"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"))
+                    .andExpect(jsonPath("$.keys.length()").value(2))
+                    .andExpect(jsonPath("$.keys[?(@.kid == '2026-10')].kty").value("OKP"))
+                    .andExpect(jsonPath("$.keys[?(@.kid == '2026-10')].crv").value("Ed25519"))
+                    .andExpect(jsonPath("$.keys[?(@.kid == '2026-04')].kty").value("EC"))
+                    .andExpect(jsonPath("$.keys[?(@.kid == '2026-04')].crv").value("P-256"))
+                    .andExpect(jsonPath("$.keys[*].d").isEmpty());
+        }
+
+        @Test
+        void shouldSignWithActiveKeyVerifiableFromJwks() throws Exception {
+            String token = login();
+
+            // A gateway only needs the published key set to verify tokens
+            String jwks = mockMvc.perform(get("/.well-known/jwks.json"))
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            JsonNode jwk = objectMapper.readTree(jwks).get("keys").findParents("kid").stream()
+                    .filter(key -> key.get("kid").asText().equals("2026-10"))
+                    .findFirst()
+                    .orElseThrow();
+            PublicKey publicKey = ((PublicJwk<?>) Jwks.parser().build().parse(jwk.toString())).toKey();
+
+            Jws<Claims> jws = Jwts.parser()
+                    .verifyWith(publicKey)
+                    .build()
+                    .parseSignedClaims(token);
+            assertThat(jws.getHeader().getKeyId()).isEqualTo("2026-10");
+            assertThat(jws.getHeader().getAlgorithm()).isEqualTo("EdDSA");
+
+            mockMvc.perform(get("/api/auth/me")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.email").value("test@test.com"));
+        }
+
+        @Test
+        void shouldVerifyTokensOfPreviousKey() throws Exception {
+            mockMvc.perform(get("/api/auth/me")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + signWith("2026-04", "2026-04"))
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.email").value("test@test.com"));
+        }
+
+        @Test
+        void shouldNotVerifyTokensWithUnknownKeyId() throws Exception {
+            mockMvc.perform(get("/api/auth/me")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + signWith("2026-04", "2025-01"))
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnauthorized());
+
+            // Key ID of another key than the signing one
+            mockMvc.perform(get("/api/auth/me")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + signWith("2026-04", "2026-10"))
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnauthorized());
+        }
+
+        @Test
+        void shouldNotVerifyTokensWithInvalidSubjectOrExpiration() throws Exception {
+            Date expiration = Date.from(Instant.now().plus(1, ChronoUnit.HOURS));
+            List<String> tokens = List.of(
+                    signWith("2026-10", "2026-10", null, expiration),
+                    signWith("2026-10", "2026-10", String.valueOf(user.getId()), expiration),
+                    signWith("2026-10", "2026-10", "abc," + user.getEmail(), expiration),
+                    signWith("2026-10", "2026-10", "99999999999," + user.getEmail(), expiration),
+                    signWith("2026-10", "2026-10", user.getId() + ",", expiration),
+                    signWith("2026-10", "2026-10", user.getId() + "," + user.getEmail(), null)
+            );
+
+            for (String token : tokens) {
+                mockMvc.perform(get("/api/auth/me")
+                                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                                .accept(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isUnauthorized());
+            }
+        }
+
+        private String login() throws Exception {
+            String body = performAsync(mockMvc, post("/api/auth/login")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"email":"test@test.com","password":"test!31"}
+                                    """))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            return objectMapper.readTree(body).get("token").asText();
+        }
+
+        private String signWith(String alias, String keyId) throws Exception {
+            return signWith(
+                    alias,
+                    keyId,
+                    user.getId() + "," + user.getEmail(),
+                    Date.from(Instant.now().plus(1, ChronoUnit.HOURS))
+            );
+        }
+
+        private String signWith(String alias, String keyId, String subject, Date expiration) throws Exception {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream input = ResourceUtils.getURL(KEYSTORE).openStream()) {
+                keyStore.load(input, KEYSTORE_PASSWORD.toCharArray());
+            }
+            Key privateKey = keyStore.getKey(alias, KEYSTORE_PASSWORD.toCharArray());
+
+            return Jwts.builder()
+                    .header().keyId(keyId).and()
+                    .subject(subject)
+                    .issuer(issuer)
+                    .issuedAt(new Date())
+                    .expiration(expiration)
+                    .signWith(privateKey)
+                    .compact();
+        }
+    }
+
+    @SpringBootTest
+    @AutoConfigureMockMvc
+    @Nested
+    class SymmetricSigningTest {
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Test
+        void shouldNotPublishSecret() throws Exception {
+            mockMvc.perform(get("/.well-known/jwks.json"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.keys").isEmpty());
+        }
+    }
+}
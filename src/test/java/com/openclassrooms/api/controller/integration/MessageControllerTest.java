@@ -0,0 +1,417 @@
+package com.openclassrooms.api.controller.integration;
+
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.pagination.KeysetCursor;
+import com.openclassrooms.api.model.response.MessageResponse;
+import com.openclassrooms.api.repository.MessageRepository;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.idempotency.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.openclassrooms.api.controller.integration.MessageControllerTest$Statements"
+})
+@AutoConfigureMockMvc
+@WithMockUser(username = "tenant@test.com")
+class MessageControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private User owner;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+        rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(owner)
+                        .build()
+        );
+        Statements.sql.clear();
+    }
+
+    @AfterEach
+    void teardown() {
+        messageRepository.deleteAll();
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void shouldSendMessageWithSingleInsert() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Message sent with success"));
+
+        Assertions.assertThat(Statements.sql)
+                .filteredOn(sql -> !sql.contains("REVOKED_TOKENS"))
+                .singleElement()
+                .asString()
+                .startsWithIgnoringCase("insert into MESSAGES");
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotSendMessageToUnknownUser() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId() + 1000, rental.getId())))
+                .andExpect(status().isBadRequest());
+
+        Assertions.assertThat(messageRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldNotSendMessageAboutUnknownRental() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId() + 1000)))
+                .andExpect(status().isBadRequest());
+
+        Assertions.assertThat(messageRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldSendMessageOnceForRepeatedIdempotencyKey() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            performAsync(mockMvc, post("/api/messages")
+                            .header("Idempotency-Key", "send-once")
+                            .with(user(principal(owner)))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content(message(owner.getId(), rental.getId())))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.message").value("Message sent with success"))
+                    .andExpect(i == 0
+                            ? header().doesNotExist("Idempotent-Replayed")
+                            : header().string("Idempotent-Replayed", "true"));
+        }
+
+        Assertions.assertThat(Statements.sql)
+                .filteredOn(sql -> sql.toLowerCase().startsWith("insert"))
+                .hasSize(1);
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetryFailedRequestWithSameIdempotencyKey() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Idempotency-Key", "retry-after-failure")
+                        .with(user(principal(owner)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId() + 1000, rental.getId())))
+                .andExpect(status().isBadRequest());
+
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Idempotency-Key", "retry-after-failure")
+                        .with(user(principal(owner)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectIdempotencyKeyReusedForAnotherMessage() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Idempotency-Key", "reused")
+                        .with(user(principal(owner)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/messages")
+                        .header("Idempotency-Key", "reused")
+                        .with(user(principal(owner)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"message\": \"Another message\", \"user_id\": " + owner.getId()
+                                + ", \"rental_id\": " + rental.getId() + "}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotSendMessageWithInvalidIdempotencyKey() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Idempotency-Key", "k".repeat(256))
+                        .with(user(principal(owner)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isBadRequest());
+
+        Assertions.assertThat(messageRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldWaitForInFlightRequestWithSameIdempotencyKey() {
+        IdempotencyStore store = new IdempotencyStore(100, 10, "1h", new SimpleMeterRegistry());
+        CompletableFuture<ResponseEntity<MessageResponse>> inFlight = new CompletableFuture<>();
+        AtomicInteger runs = new AtomicInteger();
+        String route = "POST /api/messages";
+
+        CompletableFuture<ResponseEntity<MessageResponse>> first = store.execute(1, route, "key", "fingerprint", () -> {
+            runs.incrementAndGet();
+            return inFlight;
+        });
+        CompletableFuture<ResponseEntity<MessageResponse>> duplicate = store.execute(1, route, "key", "fingerprint", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseEntity.ok(new MessageResponse("duplicate")));
+        });
+        CompletableFuture<ResponseEntity<MessageResponse>> otherUser = store.execute(2, route, "key", "fingerprint", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseEntity.ok(new MessageResponse("other user")));
+        });
+
+        Assertions.assertThat(runs).hasValue(2);
+        Assertions.assertThat(duplicate).isNotDone();
+        Assertions.assertThat(otherUser.join().getBody()).isEqualTo(new MessageResponse("other user"));
+
+        inFlight.complete(ResponseEntity.accepted().body(new MessageResponse("first")));
+
+        Assertions.assertThat(first.join().getHeaders().containsKey("Idempotent-Replayed")).isFalse();
+        ResponseEntity<MessageResponse> replayed = duplicate.join();
+        Assertions.assertThat(replayed.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        Assertions.assertThat(replayed.getBody()).isEqualTo(new MessageResponse("first"));
+        Assertions.assertThat(replayed.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+    }
+
+    @Test
+    void shouldEvictOnlyOwnKeysOfUserOverItsLimit() {
+        IdempotencyStore store = new IdempotencyStore(100, 2, "1h", new SimpleMeterRegistry());
+        CompletableFuture<ResponseEntity<MessageResponse>> inFlight = new CompletableFuture<>();
+        AtomicInteger runs = new AtomicInteger();
+        String route = "POST /api/messages";
+        Supplier<CompletableFuture<ResponseEntity<MessageResponse>>> request = () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseEntity.ok(new MessageResponse("sent")));
+        };
+
+        // User 1 has a request in flight, and a kept key ; user 2 sends more keys than its limit
+        store.execute(1, route, "in-flight", "fingerprint", () -> {
+            runs.incrementAndGet();
+            return inFlight;
+        });
+        store.execute(1, route, "kept", "fingerprint", request);
+        for (int i = 0; i < 10; i++) {
+            store.execute(2, route, "key-" + i, "fingerprint", request);
+        }
+        Assertions.assertThat(runs).hasValue(12);
+
+        // Keys of user 1 are still there, user 2 kept only its newest keys
+        store.execute(1, route, "kept", "fingerprint", request);
+        store.execute(1, route, "in-flight", "fingerprint", request);
+        store.execute(2, route, "key-9", "fingerprint", request);
+        Assertions.assertThat(runs).hasValue(12);
+        store.execute(2, route, "key-0", "fingerprint", request);
+        Assertions.assertThat(runs).hasValue(13);
+
+        // A request in flight is not evicted by its own user keys either
+        for (int i = 0; i < 10; i++) {
+            store.execute(1, route, "other-" + i, "fingerprint", request);
+        }
+        CompletableFuture<ResponseEntity<MessageResponse>> duplicate =
+                store.execute(1, route, "in-flight", "fingerprint", request);
+        Assertions.assertThat(runs).hasValue(23);
+        inFlight.complete(ResponseEntity.accepted().body(new MessageResponse("first")));
+        Assertions.assertThat(duplicate.join().getBody()).isEqualTo(new MessageResponse("first"));
+    }
+
+    @Test
+    void shouldWalkThroughInboxPagesNewestFirst() throws Exception {
+        User other = userRepository.saveAndFlush(
+                User.builder()
+                        .email("other@test.com")
+                        .name("other TEST")
+                        .password("password")
+                        .build()
+        );
+        Rental otherRental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("other rental")
+                        .surface(BigDecimal.valueOf(50))
+                        .price(BigDecimal.valueOf(500))
+                        .picture("http://localhost/images/other.jpg")
+                        .description("other description")
+                        .owner(other)
+                        .build()
+        );
+        List<Integer> sent = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            sent.add(messageRepository.save(
+                    Message.builder().message("inquiry " + i).user(other).rental(rental).build()).getId());
+            messageRepository.save(Message.builder().message("other " + i).user(owner).rental(otherRental).build());
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/messages/inbox")
+                    .param("size", "3")
+                    .with(user(principal(owner)))
+                    .accept(MediaType.APPLICATION_JSON);
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            JsonNode page = objectMapper.readTree(mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.messages[0].rental_id").value(rental.getId()))
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString());
+            page.get("messages").forEach(message -> ids.add(message.get("id").asInt()));
+            cursor = page.hasNonNull("next_cursor") ? page.get("next_cursor").asText() : null;
+        } while (cursor != null);
+
+        Collections.reverse(sent);
+        Assertions.assertThat(ids).isEqualTo(sent);
+    }
+
+    @Test
+    void shouldListRentalMessagesForItsOwnerOnly() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            messageRepository.save(Message.builder().message("inquiry " + i).user(owner).rental(rental).build());
+        }
+
+        mockMvc.perform(get("/api/rentals/{id}/messages", rental.getId())
+                        .param("size", "2")
+                        .with(user(principal(owner)))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(2))
+                .andExpect(jsonPath("$.messages[0].message").value("inquiry 2"))
+                .andExpect(jsonPath("$.messages[0].user_id").value(owner.getId()))
+                .andExpect(jsonPath("$.next_cursor").isString());
+
+        User stranger = User.builder().id(owner.getId() + 1000).email("stranger@test.com").build();
+        mockMvc.perform(get("/api/rentals/{id}/messages", rental.getId())
+                        .with(user(stranger))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void shouldNotListInboxWithInvalidCursor() throws Exception {
+        mockMvc.perform(get("/api/messages/inbox")
+                        .param("cursor", new KeysetCursor("price", List.of("1", "2")).encode())
+                        .with(user(principal(owner)))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Principal built by JwtFilter : User with ID and email
+     *
+     * @param user User
+     * @return User
+     */
+    private static User principal(User user) {
+        return User.builder().id(user.getId()).email(user.getEmail()).build();
+    }
+
+    /**
+     * Message request JSON
+     *
+     * @param userId recipient ID
+     * @param rentalId rental ID
+     * @return String
+     */
+    private static String message(int userId, int rentalId) {
+        return "{\"message\": \"Is it still available ?\", \"user_id\": " + userId
+                + ", \"rental_id\": " + rentalId + "}";
+    }
+
+    /**
+     * Keep SQL statements prepared by Hibernate
+     */
+    public static class Statements implements StatementInspector {
+        static final List<String> sql = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            Statements.sql.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.openclassrooms.api.controller.integration;
+
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.repository.MessageRepository;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.RentalService;
+import com.openclassrooms.api.service.message.MessageStreams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser(username = "tenant@test.com")
+class MessageStreamTest {
+
+    private static final long PUSH_TIMEOUT_MILLIS = 5_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageStreams messageStreams;
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private User owner;
+
+    private User other;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+        other = userRepository.saveAndFlush(
+                User.builder()
+                        .email("other@test.com")
+                        .name("other TEST")
+                        .password("password")
+                        .build()
+        );
+        rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(owner)
+                        .build()
+        );
+    }
+
+    @AfterEach
+    void teardown() {
+        messageRepository.deleteAll();
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void shouldPushSentMessageToRentalOwnerOnly() throws Exception {
+        MvcResult ownerStream = open(owner, null);
+        MvcResult otherStream = open(other, null);
+
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"message\": \"Is it still available ?\", \"user_id\": " + other.getId()
+                                + ", \"rental_id\": " + rental.getId() + "}"))
+                .andExpect(status().isOk());
+        int id = messageRepository.findAll().iterator().next().getId();
+
+        String pushed = awaitContent(ownerStream, "id:" + id);
+        Assertions.assertThat(pushed)
+                .contains("event:message")
+                .contains("\"rental_id\":" + rental.getId())
+                .contains("\"message\":\"Is it still available ?\"");
+        Assertions.assertThat(otherStream.getResponse().getContentAsString()).doesNotContain("event:message");
+    }
+
+    @Test
+    void shouldReplayMessagesSentAfterLastEventId() throws Exception {
+        int[] ids = new int[3];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messageRepository.save(
+                    Message.builder().message("inquiry " + i).user(other).rental(rental).build()).getId();
+        }
+
+        String replayed = open(owner, String.valueOf(ids[0])).getResponse().getContentAsString();
+
+        Assertions.assertThat(replayed)
+                .doesNotContain("id:" + ids[0] + "\n")
+                .contains("id:" + ids[1] + "\n")
+                .contains("id:" + ids[2] + "\n");
+        Assertions.assertThat(replayed.indexOf("id:" + ids[1])).isLessThan(replayed.indexOf("id:" + ids[2]));
+    }
+
+    @Test
+    void shouldSendHeartbeats() throws Exception {
+        MvcResult stream = open(owner, null);
+
+        messageStreams.heartbeat();
+
+        awaitContent(stream, ":heartbeat");
+    }
+
+    @Test
+    void shouldNotOpenStreamWithInvalidLastEventId() throws Exception {
+        mockMvc.perform(get("/api/messages/stream")
+                        .header("Last-Event-ID", "not a message")
+                        .with(user(principal(owner)))
+                        .accept(MediaType.TEXT_EVENT_STREAM, MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldCloseLaggingStreamOnlyWithoutDelayingOthers() throws Exception {
+        Rental otherRental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("other rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(other)
+                        .build()
+        );
+        TestStreams streams = new TestStreams("PT5S");
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            TestEmitter slow = streams.subscribe(owner.getId(), new TestEmitter(release));
+            TestEmitter fast = streams.subscribe(other.getId(), new TestEmitter(null));
+
+            // First message blocks the slow stream writer, next ones fill its outbox, last one overflows
+            streams.publish(message(1, rental));
+            Assertions.assertThat(slow.sending.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            for (int i = 2; i <= TestStreams.OUTBOX_CAPACITY + 2; i++) {
+                streams.publish(message(i, rental));
+            }
+
+            // Other streams are still written while the slow stream writer is held
+            for (int i = 1; i <= TestStreams.OUTBOX_CAPACITY + 2; i++) {
+                streams.publish(message(100 + i, otherRental));
+                Assertions.assertThat(fast.awaitSent(i)).isTrue();
+            }
+            Assertions.assertThat(streams.meterRegistry.counter("messages.stream.lagging").count()).isEqualTo(1);
+            Assertions.assertThat(fast.completed.getCount()).isEqualTo(1);
+
+            release.countDown();
+            Assertions.assertThat(slow.completed.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            Assertions.assertThat(slow.sent).hasSize(1);
+        } finally {
+            release.countDown();
+            streams.shutdown();
+        }
+    }
+
+    @Test
+    void shouldCloseStreamWhoseWriteTimedOut() throws Exception {
+        TestStreams streams = new TestStreams("PT0.1S");
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            TestEmitter slow = streams.subscribe(owner.getId(), new TestEmitter(release));
+            streams.publish(message(1, rental));
+            Assertions.assertThat(slow.sending.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            Thread.sleep(200);
+
+            streams.closeStalled();
+            streams.publish(message(2, rental));
+
+            Assertions.assertThat(streams.meterRegistry.counter("messages.stream.lagging").count()).isEqualTo(1);
+            release.countDown();
+            Assertions.assertThat(slow.completed.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            Assertions.assertThat(slow.sent).hasSize(1);
+        } finally {
+            release.countDown();
+            streams.shutdown();
+        }
+    }
+
+    @Test
+    void shouldReleaseWriterWhenContainerWriteTimesOut() throws Exception {
+        TestStreams streams = new TestStreams("PT5S");
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            TestEmitter stalled = streams.subscribe(
+                    owner.getId(),
+                    new TestEmitter(release, new SocketTimeoutException("write timed out"))
+            );
+            streams.publish(message(1, rental));
+            Assertions.assertThat(stalled.sending.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+
+            // Container gives up the write : stream is removed, and its writer serves other streams
+            release.countDown();
+            long deadline = System.currentTimeMillis() + PUSH_TIMEOUT_MILLIS;
+            while (streams.meterRegistry.counter("messages.stream.lagging").count() < 1
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertThat(streams.meterRegistry.counter("messages.stream.lagging").count()).isEqualTo(1);
+            Assertions.assertThat(streams.meterRegistry.get("messages.stream.open").gauge().value()).isZero();
+
+            TestEmitter next = streams.subscribe(owner.getId(), new TestEmitter(null));
+            streams.publish(message(2, rental));
+            Assertions.assertThat(next.awaitSent(1)).isTrue();
+            Assertions.assertThat(stalled.sent).isEmpty();
+        } finally {
+            release.countDown();
+            streams.shutdown();
+        }
+    }
+
+    @Test
+    void shouldEndStreamWithAccessToken() {
+        TestStreams streams = new TestStreams("PT5S");
+        try {
+            streams.subscribe(owner.getId(), "token", null, Instant.now().plusSeconds(60));
+            Assertions.assertThat(streams.timeout).isPositive().isLessThanOrEqualTo(60_000);
+
+            streams.subscribe(owner.getId(), null, null, null);
+            Assertions.assertThat(streams.timeout).isEqualTo(Duration.ofMinutes(30).toMillis());
+        } finally {
+            streams.shutdown();
+        }
+    }
+
+    @Test
+    void shouldCloseStreamsOfRevokedTokenOnly() throws Exception {
+        TestStreams streams = new TestStreams("PT5S");
+        try {
+            TestEmitter revoked = streams.subscribe(owner.getId(), "revoked-token", new TestEmitter(null));
+            TestEmitter other = streams.subscribe(owner.getId(), "other-token", new TestEmitter(null));
+
+            streams.close("revoked-token");
+
+            Assertions.assertThat(revoked.completed.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            streams.publish(message(1, rental));
+            Assertions.assertThat(other.awaitSent(1)).isTrue();
+            Assertions.assertThat(other.completed.getCount()).isEqualTo(1);
+            Assertions.assertThat(revoked.sent).isEmpty();
+        } finally {
+            streams.shutdown();
+        }
+    }
+
+    /**
+     * Open a messages stream
+     *
+     * @param user stream owner
+     * @param lastEventId Last-Event-ID header, null for none
+     * @return MvcResult of the started stream
+     * @throws Exception Exception
+     */
+    private MvcResult open(User user, String lastEventId) throws Exception {
+        var request = get("/api/messages/stream")
+                .with(user(principal(user)))
+                .accept(MediaType.TEXT_EVENT_STREAM);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        MvcResult result = mockMvc.perform(request).andReturn();
+        Assertions.assertThat(result.getRequest().isAsyncStarted()).isTrue();
+        return result;
+    }
+
+    /**
+     * Wait until a stream received some content, pushed by another thread
+     *
+     * @param stream MvcResult of a started stream
+     * @param expected expected content
+     * @return stream content
+     * @throws Exception Exception
+     */
+    private static String awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + PUSH_TIMEOUT_MILLIS;
+        String content = stream.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = stream.getResponse().getContentAsString();
+        }
+        Assertions.assertThat(content).contains(expected);
+        return content;
+    }
+
+    /**
+     * Principal built by JwtFilter : User with ID and email
+     *
+     * @param user User
+     * @return User
+     */
+    private static User principal(User user) {
+        return User.builder().id(user.getId()).email(user.getEmail()).build();
+    }
+
+    /**
+     * Message pushed on a rental
+     *
+     * @param id message ID
+     * @param rental Rental
+     * @return InboxMessageResponse
+     */
+    private InboxMessageResponse message(int id, Rental rental) {
+        return InboxMessageResponse.builder()
+                .id(id)
+                .rentalId(rental.getId())
+                .userId(other.getId())
+                .message("message " + id)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    /**
+     * MessageStreams with small outboxes, whose emitters are given by tests
+     */
+    private class TestStreams extends MessageStreams {
+        private static final int OUTBOX_CAPACITY = 2;
+
+        private final SimpleMeterRegistry meterRegistry;
+        private SseEmitter next;
+        private long timeout;
+
+        private TestStreams(String sendTimeout) {
+            this(sendTimeout, new SimpleMeterRegistry());
+        }
+
+        private TestStreams(String sendTimeout, SimpleMeterRegistry meterRegistry) {
+            super(messageRepository, rentalService, "30m", 100, 100, 2, OUTBOX_CAPACITY, sendTimeout, meterRegistry);
+            this.meterRegistry = meterRegistry;
+        }
+
+        private TestEmitter subscribe(int ownerId, TestEmitter emitter) {
+            return subscribe(ownerId, null, emitter);
+        }
+
+        private TestEmitter subscribe(int ownerId, String tokenId, TestEmitter emitter) {
+            next = emitter;
+            subscribe(ownerId, tokenId, null, null);
+            return emitter;
+        }
+
+        @Override
+        protected SseEmitter newEmitter(long timeout) {
+            this.timeout = timeout;
+            SseEmitter emitter = next != null ? next : super.newEmitter(timeout);
+            next = null;
+            return emitter;
+        }
+    }
+
+    /**
+     * Emitter recording sent events, whose writes can be held until released, then fail
+     */
+    private static class TestEmitter extends SseEmitter {
+        private final CountDownLatch release;
+        private final IOException failure;
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final List<SseEventBuilder> sent = new CopyOnWriteArrayList<>();
+
+        private TestEmitter(CountDownLatch release) {
+            this(release, null);
+        }
+
+        private TestEmitter(CountDownLatch release, IOException failure) {
+            this.release = release;
+            this.failure = failure;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            sent.add(builder);
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        private boolean awaitSent(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + PUSH_TIMEOUT_MILLIS;
+            while (sent.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return sent.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.openclassrooms.api.controller.integration;
+
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.response.message.InboxMessageResponse;
+import com.openclassrooms.api.repository.MessageRepository;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import com.openclassrooms.api.service.MessageService;
+import com.openclassrooms.api.service.message.MessageDurability;
+import com.openclassrooms.api.service.message.MessageWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@SpringBootTest(properties = "app.messages.write-behind.enabled=true")
+@AutoConfigureMockMvc
+@WithMockUser(username = "tenant@test.com")
+class MessageWriteBehindTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User owner;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+        rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("rental")
+                        .surface(BigDecimal.valueOf(20))
+                        .price(BigDecimal.valueOf(100))
+                        .picture("http://localhost/images/rental.jpg")
+                        .description("description")
+                        .owner(owner)
+                        .build()
+        );
+    }
+
+    @AfterEach
+    void teardown() {
+        messageRepository.deleteAll();
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldAcknowledgeMessageOnceCommitted() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Message sent with success"));
+
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAcknowledgeMessageOnceQueuedWhenPreferred() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Prefer", "wait=5, respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("$.message").value("Message accepted"));
+
+        // Messages are inserted in order : once a following message is committed, the queued one is too
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk());
+
+        Assertions.assertThat(messageRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldAcknowledgeIdempotentMessageOnceCommitted() throws Exception {
+        // A replayed acknowledgement must not tell a message was accepted if it was never stored
+        performAsync(mockMvc, post("/api/messages")
+                        .header("Prefer", "respond-async")
+                        .header("Idempotency-Key", "committed-only")
+                        .with(user(User.builder().id(owner.getId()).email(owner.getEmail()).build()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId(), rental.getId())))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Preference-Applied"))
+                .andExpect(jsonPath("$.message").value("Message sent with success"));
+
+        Assertions.assertThat(messageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotSendMessageToUnknownUser() throws Exception {
+        performAsync(mockMvc, post("/api/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(message(owner.getId() + 1000, rental.getId())))
+                .andExpect(status().isBadRequest());
+
+        Assertions.assertThat(messageRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldRejectOnlyMessagesWithUnknownIds() {
+        List<CompletableFuture<Optional<MessageDurability>>> sent = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int rentalId = i % 10 == 0 ? rental.getId() + 1000 : rental.getId();
+            sent.add(messageService.sendMessage("message " + i, owner.getId(), rentalId, MessageDurability.COMMITTED));
+        }
+
+        for (int i = 0; i < sent.size(); i++) {
+            Optional<MessageDurability> durability = sent.get(i).join();
+            if (i % 10 == 0) {
+                Assertions.assertThat(durability).isEmpty();
+            } else {
+                Assertions.assertThat(durability).contains(MessageDurability.COMMITTED);
+            }
+        }
+        Assertions.assertThat(messageRepository.count()).isEqualTo(90);
+    }
+
+    @Test
+    void shouldRejectMessagesWhenQueueIsFullAndInsertQueuedOnesOnShutdown() {
+        // Writer thread not started : messages stay queued
+        MessageWriter writer = new MessageWriter(
+                jdbcTemplate,
+                transactionTemplate,
+                true,
+                2,
+                500,
+                new SimpleMeterRegistry()
+        );
+
+        CompletableFuture<Optional<InboxMessageResponse>> first = writer.enqueue("first", owner.getId(), rental.getId());
+        CompletableFuture<Optional<InboxMessageResponse>> second = writer.enqueue("second", owner.getId(), rental.getId());
+        Assertions.assertThatThrownBy(() -> writer.enqueue("third", owner.getId(), rental.getId()))
+                .isInstanceOf(RejectedExecutionException.class);
+        Assertions.assertThat(messageRepository.count()).isZero();
+
+        writer.shutdown();
+
+        Assertions.assertThat(first.join()).map(InboxMessageResponse::message).contains("first");
+        Assertions.assertThat(second.join()).map(InboxMessageResponse::message).contains("second");
+        Assertions.assertThat(messageRepository.findAll())
+                .extracting(Message::getId)
+                .containsExactlyInAnyOrder(first.join().orElseThrow().id(), second.join().orElseThrow().id());
+        Assertions.assertThatThrownBy(() -> writer.enqueue("late", owner.getId(), rental.getId()))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    /**
+     * Message request JSON
+     *
+     * @param userId recipient ID
+     * @param rentalId rental ID
+     * @return String
+     */
+    private static String message(int userId, int rentalId) {
+        return "{\"message\": \"Is it still available ?\", \"user_id\": " + userId
+                + ", \"rental_id\": " + rentalId + "}";
+    }
+}
@@ -0,0 +1,703 @@
+package com.openclassrooms.api.controller.integration;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.repository.RentalRepository;
+import com.openclassrooms.api.repository.UserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.test.context.support.TestExecutionEvent;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithUserDetails(value = "owner@test.com", setupBefore = TestExecutionEvent.TEST_EXECUTION)
+class RentalControllerTest {
+
+    private static final int RENTALS_COUNT = 7;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void init() {
+
+        User owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+
+        for (int i = 0; i < RENTALS_COUNT; i++) {
+            rentalRepository.saveAndFlush(
+                    Rental.builder()
+                            .name("rental " + i)
+                            .surface(BigDecimal.valueOf(20L + i))
+                            .price(BigDecimal.valueOf(100L + i))
+                            .picture("http://localhost/images/rental" + i + ".jpg")
+                            .description("description " + i)
+                            .owner(owner)
+                            .build()
+            );
+        }
+    }
+
+    @AfterEach
+    void teardown() {
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void shouldListAllRentals() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/rentals")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.rentals.length()").value(RENTALS_COUNT))
+                .andExpect(jsonPath("$.next_cursor").doesNotExist());
+    }
+
+    @Test
+    void shouldStreamAllRentalsAsNdjson() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/rentals")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        String[] lines = body.split("\n");
+        Assertions.assertThat(lines).hasSize(RENTALS_COUNT);
+        for (String line : lines) {
+            Assertions.assertThat(objectMapper.readTree(line).has("owner_id")).isTrue();
+        }
+    }
+
+    @Test
+    void shouldWalkThroughAllPages() throws Exception {
+
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+
+        do {
+            MockHttpServletRequestBuilder request = get("/api/rentals")
+                    .param("size", "3")
+                    .accept(MediaType.APPLICATION_JSON);
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+
+            JsonNode page = objectMapper.readTree(body);
+            page.get("rentals").forEach(rental -> ids.add(rental.get("id").asInt()));
+            cursor = page.hasNonNull("next_cursor") ? page.get("next_cursor").asText() : null;
+            pages++;
+        } while (cursor != null);
+
+        Assertions.assertThat(pages).isEqualTo(3);
+        Assertions.assertThat(ids).hasSize(RENTALS_COUNT).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void shouldGetRental() throws Exception {
+        Rental rental = rentalRepository.findAll().get(0);
+
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(rental.getId()))
+                .andExpect(jsonPath("$.name").value(rental.getName()))
+                .andExpect(jsonPath("$.owner_id").value(rental.getOwner().getId()))
+                .andExpect(jsonPath("$.created_at").isString());
+    }
+
+    @Test
+    void shouldNotSendUnmodifiedRental() throws Exception {
+        Rental rental = rentalRepository.findAll().get(0);
+
+        String etag = mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(multipart(HttpMethod.PUT, "/api/rentals/{id}", rental.getId())
+                        .param("name", "renamed")
+                        .param("surface", "30")
+                        .param("price", "300")
+                        .param("description", "renamed rental")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("renamed"));
+    }
+
+    @Test
+    void shouldCreateRentalOnceForRepeatedIdempotencyKey() throws Exception {
+        Path images = Files.createDirectories(Path.of("/tmp/rental/images"));
+        MockMultipartFile picture = new MockMultipartFile(
+                "picture",
+                "idempotency-test.png",
+                MediaType.IMAGE_PNG_VALUE,
+                new byte[]{1, 2, 3}
+        );
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                MvcResult result = mockMvc.perform(multipart("/api/rentals")
+                                .file(picture)
+                                .param("name", "retried rental")
+                                .param("surface", "30")
+                                .param("price", "300")
+                                .param("description", "retried rental")
+                                .header("Idempotency-Key", "create-retried-rental")
+                                .accept(MediaType.APPLICATION_JSON))
+                        .andExpect(request().asyncStarted())
+                        .andReturn();
+
+                mockMvc.perform(asyncDispatch(result))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.message").value("Rental created !"))
+                        .andExpect(i == 0
+                                ? header().doesNotExist("Idempotent-Replayed")
+                                : header().string("Idempotent-Replayed", "true"));
+            }
+
+            // Same key, same fields, another picture
+            mockMvc.perform(multipart("/api/rentals")
+                            .file(new MockMultipartFile(
+                                    "picture",
+                                    "idempotency-test.png",
+                                    MediaType.IMAGE_PNG_VALUE,
+                                    new byte[]{4, 5, 6}
+                            ))
+                            .param("name", "retried rental")
+                            .param("surface", "30")
+                            .param("price", "300")
+                            .param("description", "retried rental")
+                            .header("Idempotency-Key", "create-retried-rental")
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnprocessableEntity());
+
+            Assertions.assertThat(rentalRepository.count()).isEqualTo(RENTALS_COUNT + 1);
+            try (var stored = Files.list(images)) {
+                Assertions.assertThat(stored.filter(file -> file.getFileName().toString().startsWith("idempotency-test")))
+                        .hasSize(1);
+            }
+        } finally {
+            try (var stored = Files.list(images)) {
+                for (Path file : stored.filter(f -> f.getFileName().toString().startsWith("idempotency-test")).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldNotSendUnmodifiedRentalsPage() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals")
+                        .param("size", "3")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("size", "3")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified());
+
+        rentalRepository.deleteById(rentalRepository.findAll().get(0).getId());
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("size", "3")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldFindUpdatedRental() throws Exception {
+        Rental rental = rentalRepository.findAll().get(0);
+
+        mockMvc.perform(multipart(HttpMethod.PUT, "/api/rentals/{id}", rental.getId())
+                        .param("name", "Villa Océane")
+                        .param("surface", "120")
+                        .param("price", "900")
+                        .param("description", "Grande villa face à la mer")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/rentals/search")
+                        .param("q", "oceane mer")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(1))
+                .andExpect(jsonPath("$.rentals[0].id").value(rental.getId()))
+                .andExpect(jsonPath("$.rentals[0].name").value("Villa Océane"));
+
+        mockMvc.perform(get("/api/rentals/search")
+                        .param("q", "chalet")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(0));
+    }
+
+    @Test
+    void shouldNotSearchRentalsWithInvalidPage() throws Exception {
+        mockMvc.perform(get("/api/rentals/search")
+                        .param("q", "villa")
+                        .param("page", "-1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        // Offset of this page overflows an int
+        mockMvc.perform(get("/api/rentals/search")
+                        .param("q", "villa")
+                        .param("page", String.valueOf(Integer.MAX_VALUE / 2))
+                        .param("size", "10")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNotListRentalsWithInvalidCursor() throws Exception {
+        mockMvc.perform(get("/api/rentals")
+                        .param("cursor", "not a cursor")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldFilterAndSortAcrossPages() throws Exception {
+
+        List<BigDecimal> prices = new ArrayList<>();
+        String cursor = null;
+
+        do {
+            MockHttpServletRequestBuilder request = get("/api/rentals")
+                    .param("minPrice", "101")
+                    .param("maxPrice", "105")
+                    .param("minSurface", "22")
+                    .param("sort", "-price")
+                    .param("size", "2")
+                    .accept(MediaType.APPLICATION_JSON);
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+
+            JsonNode page = objectMapper.readTree(body);
+            page.get("rentals").forEach(rental -> prices.add(rental.get("price").decimalValue()));
+            cursor = page.hasNonNull("next_cursor") ? page.get("next_cursor").asText() : null;
+        } while (cursor != null);
+
+        Assertions.assertThat(prices)
+                .extracting(BigDecimal::intValue)
+                .containsExactly(105, 104, 103, 102);
+    }
+
+    @Test
+    void shouldNotListRentalsWithCursorOfAnotherSort() throws Exception {
+        String body = mockMvc.perform(get("/api/rentals")
+                        .param("sort", "surface")
+                        .param("size", "3")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String cursor = objectMapper.readTree(body).get("next_cursor").asText();
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("sort", "-price")
+                        .param("cursor", cursor)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNotListRentalsWithUnknownSort() throws Exception {
+        mockMvc.perform(get("/api/rentals")
+                        .param("sort", "price,name")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldListUpdatedRentalInsteadOfCachedJson() throws Exception {
+        Rental rental = rentalRepository.findAll().get(0);
+
+        // Rental JSON is cached by both routes
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/rentals")
+                        .param("size", "1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals[0].name").value(rental.getName()));
+
+        mockMvc.perform(multipart(HttpMethod.PUT, "/api/rentals/{id}", rental.getId())
+                        .param("name", "renamed")
+                        .param("surface", "30")
+                        .param("price", "300")
+                        .param("description", "renamed rental")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("size", "1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals[0].id").value(rental.getId()))
+                .andExpect(jsonPath("$.rentals[0].name").value("renamed"))
+                .andExpect(jsonPath("$.rentals[0].price").value(300))
+                .andExpect(jsonPath("$.next_cursor").isString());
+
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("renamed"))
+                .andExpect(jsonPath("$.created_at").isString());
+    }
+
+    @Test
+    void shouldImportNdjsonRentals() throws Exception {
+        Path image = Files.createDirectories(Path.of("/tmp/rental/images")).resolve("import-test.jpg");
+        Files.write(image, new byte[]{1, 2, 3});
+
+        String ndjson = """
+                {"name":"Manoir du lac","surface":300,"price":1500,"picture":"https://images.test/manoir.jpg","description":"Manoir au bord du lac"}
+                {"name":"Cabane","surface":12,"price":-10,"picture":"https://images.test/cabane.jpg","description":"Petite cabane"}
+                {"name":"Broken",
+
+                {"name":"Chalet des cimes","surface":80,"price":700,"picture":"import-test.jpg","description":"Chalet en montagne"}
+                {"name":"Yourte","surface":30,"price":90,"picture":"missing.jpg","description":"Yourte"}
+                """;
+
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(3))
+                .andExpect(jsonPath("$.errors.length()").value(3))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[0].error").value(startsWith("price")))
+                .andExpect(jsonPath("$.errors[1].line").value(3))
+                .andExpect(jsonPath("$.errors[1].error").value(startsWith("Invalid JSON")))
+                .andExpect(jsonPath("$.errors[2].line").value(6))
+                .andExpect(jsonPath("$.errors[2].error").value(startsWith("picture")));
+
+        Assertions.assertThat(rentalRepository.count()).isEqualTo(RENTALS_COUNT + 2);
+
+        mockMvc.perform(get("/api/rentals/search")
+                        .param("q", "chalet montagne")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(1))
+                .andExpect(jsonPath("$.rentals[0].picture").value("http://localhost/images/import-test.jpg"))
+                .andExpect(jsonPath("$.rentals[0].created_at").isString());
+
+        Files.deleteIfExists(image);
+    }
+
+    @Test
+    void shouldRejectOnlyRowsRefusedByDatabase() throws Exception {
+        // Valid file name, but its URL is longer than the picture column
+        String name = "p".repeat(240) + ".jpg";
+        Path image = Files.createDirectories(Path.of("/tmp/rental/images")).resolve(name);
+        Files.write(image, new byte[]{1, 2, 3});
+
+        String ndjson = """
+                {"name":"Manoir","surface":300,"price":1500,"picture":"https://images.test/manoir.jpg","description":"Manoir"}
+                {"name":"Too long","surface":30,"price":90,"picture":"%s","description":"Too long"}
+                {"name":"Chalet","surface":80,"price":700,"picture":"https://images.test/chalet.jpg","description":"Chalet"}
+                """.formatted(name);
+
+        try {
+            mockMvc.perform(post("/api/rentals/import")
+                            .contentType(MediaType.APPLICATION_NDJSON)
+                            .content(ndjson)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.imported").value(2))
+                    .andExpect(jsonPath("$.rejected").value(1))
+                    .andExpect(jsonPath("$.errors.length()").value(1))
+                    .andExpect(jsonPath("$.errors[0].line").value(2))
+                    .andExpect(jsonPath("$.errors[0].error").value("Rejected by database constraints"));
+
+            Assertions.assertThat(rentalRepository.count()).isEqualTo(RENTALS_COUNT + 2);
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    void shouldReportFirstRejectedRowsOnly() throws Exception {
+        // Test limit is 100 reported errors
+        String ndjson = "{\"name\":\"Broken\",\n".repeat(150);
+
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(0))
+                .andExpect(jsonPath("$.rejected").value(150))
+                .andExpect(jsonPath("$.errors.length()").value(100))
+                .andExpect(jsonPath("$.errors[0].line").value(1))
+                .andExpect(jsonPath("$.errors[99].line").value(100));
+    }
+
+    @Test
+    void shouldRejectTooLongRows() throws Exception {
+        // Test limit is 10000 characters per row
+        String ndjson = "{\"name\":\"" + "x".repeat(20_000) + "\"}\r\n"
+                + "{\"name\":\"Manoir\",\"surface\":300,\"price\":1500,"
+                + "\"picture\":\"https://images.test/manoir.jpg\",\"description\":\"Manoir\"}\r\n";
+
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(1))
+                .andExpect(jsonPath("$.errors[0].error").value(startsWith("Row longer than")));
+    }
+
+    @Test
+    void shouldNotReadRowsPastMaxRows() throws Exception {
+        // Test limit is 60000 rows
+        String ndjson = "\n".repeat(60_000)
+                + "{\"name\":\"Manoir\",\"surface\":300,\"price\":1500,"
+                + "\"picture\":\"https://images.test/manoir.jpg\",\"description\":\"Manoir\"}\n";
+
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(0))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(60_001))
+                .andExpect(jsonPath("$.errors[0].error").value(startsWith("Import limited")));
+
+        Assertions.assertThat(rentalRepository.count()).isEqualTo(RENTALS_COUNT);
+    }
+
+    @Test
+    void shouldImportCsvRentals() throws Exception {
+        String csv = """
+                name,surface,price,picture,description
+                Loft,60,450.50,https://images.test/loft.jpg,"Loft, centre ville
+                sur deux niveaux"
+                Studio,abc,300,https://images.test/studio.jpg,Studio
+                Maison,110,800,https://images.test/maison.jpg,Maison avec jardin
+                """;
+
+        mockMvc.perform(post("/api/rentals/import")
+                        .contentType("text/csv")
+                        .content(csv)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors.length()").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(4))
+                .andExpect(jsonPath("$.errors[0].error").isString());
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("minPrice", "450")
+                        .param("maxPrice", "451")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(1))
+                .andExpect(jsonPath("$.rentals[0].description").value("Loft, centre ville\nsur deux niveaux"));
+    }
+
+    @Test
+    void shouldListOwnerRentals() throws Exception {
+        User owner = userRepository.findByEmail("owner@test.com").orElseThrow();
+        User other = userRepository.saveAndFlush(
+                User.builder()
+                        .email("other@test.com")
+                        .name("other TEST")
+                        .password("password")
+                        .build()
+        );
+        rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("other rental")
+                        .surface(BigDecimal.valueOf(50))
+                        .price(BigDecimal.valueOf(500))
+                        .picture("http://localhost/images/other.jpg")
+                        .description("other description")
+                        .owner(other)
+                        .build()
+        );
+
+        // Principal built by JwtFilter : User with ID and email
+        User principal = User.builder().id(owner.getId()).email(owner.getEmail()).build();
+
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/rentals")
+                    .param("owner", "me")
+                    .param("size", "4")
+                    .with(user(principal))
+                    .accept(MediaType.APPLICATION_JSON);
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+
+            JsonNode page = objectMapper.readTree(body);
+            page.get("rentals").forEach(rental -> {
+                Assertions.assertThat(rental.get("owner_id").asInt()).isEqualTo(owner.getId());
+                ids.add(rental.get("id").asInt());
+            });
+            cursor = page.hasNonNull("next_cursor") ? page.get("next_cursor").asText() : null;
+        } while (cursor != null);
+
+        Assertions.assertThat(ids).hasSize(RENTALS_COUNT).doesNotHaveDuplicates();
+
+        mockMvc.perform(get("/api/rentals")
+                        .param("owner", String.valueOf(other.getId()))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(1))
+                .andExpect(jsonPath("$.rentals[0].owner_id").value(other.getId()));
+    }
+
+    @Test
+    void shouldNotListRentalsOfInvalidOwner() throws Exception {
+        mockMvc.perform(get("/api/rentals")
+                        .param("owner", "someone")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNotUpdateRentalOfAnotherOwner() throws Exception {
+        User other = userRepository.saveAndFlush(
+                User.builder()
+                        .email("other@test.com")
+                        .name("other TEST")
+                        .password("password")
+                        .build()
+        );
+        Rental rental = rentalRepository.saveAndFlush(
+                Rental.builder()
+                        .name("other rental")
+                        .surface(BigDecimal.valueOf(50))
+                        .price(BigDecimal.valueOf(500))
+                        .picture("http://localhost/images/other.jpg")
+                        .description("other description")
+                        .owner(other)
+                        .build()
+        );
+
+        mockMvc.perform(multipart(HttpMethod.PUT, "/api/rentals/{id}", rental.getId())
+                        .param("name", "renamed")
+                        .param("surface", "30")
+                        .param("price", "300")
+                        .param("description", "renamed rental")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(get("/api/rentals/{id}", rental.getId())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("other rental"));
+    }
+}
@@ -1,5 +1,7 @@
 package com.openclassrooms.api.controller.unit;
 
+import static com.openclassrooms.api.controller.AsyncRequests.performAsync;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -7,9 +9,11 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import com.openclassrooms.api.controller.AuthentificationController;
 import com.openclassrooms.api.configuration.jwt.JwtService;
+import com.openclassrooms.api.model.response.TokenResponse;
 import com.openclassrooms.api.model.response.auth.AuthMeResponse;
 import com.openclassrooms.api.model.entity.User;
 import com.openclassrooms.api.service.AuthentificationService;
+import com.openclassrooms.api.service.TokenRevocationService;
 import com.openclassrooms.api.configuration.converter.UserToAuthMeResponse;
 
 import com.openclassrooms.api.service.storage.StorageService;
@@ -29,7 +33,9 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 class AuthentificationControllerTest {
 
@@ -47,6 +53,9 @@ class AuthentificationControllerTest {
         @MockBean
         private JwtService jwtService;
 
+        @MockBean
+        private TokenRevocationService tokenRevocationService;
+
         @MockBean
         private StorageService storageService;
 
@@ -54,18 +63,18 @@ class AuthentificationControllerTest {
         void setup() {
 
             Mockito.when(authentificationService.registerUser("test@test.com", "test TEST", "test!31"))
-                    .thenReturn(Optional.empty());
+                    .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
             Mockito.when(authentificationService.registerUser("new@test.com", "test TEST", "test!31"))
-                    .thenReturn(Optional.of("jwt"));
+                    .thenReturn(CompletableFuture.completedFuture(Optional.of(new TokenResponse("jwt", "refresh"))));
 
             Mockito.when(authentificationService.loginUser("test@test.com", "test!31"))
-                    .thenReturn(Optional.of("jwt"));
+                    .thenReturn(CompletableFuture.completedFuture(Optional.of(new TokenResponse("jwt", "refresh"))));
         }
 
         @Test
         void shouldReturnOkWhenRegisteringNewUser() throws Exception {
-            mockMvc.perform(post("/api/auth/register")
+            performAsync(mockMvc, post("/api/auth/register")
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON)
                     .content("{\"email\": \"new@test.com\",\"name\": \"test TEST\",\"password\": \"test!31\"}")
@@ -75,7 +84,7 @@ class AuthentificationControllerTest {
         @ParameterizedTest
         @MethodSource("com.openclassrooms.api.controller.AuthentificationParams#badRequestWhenRegisterTestData")
         void shouldReturnBadRequestWhenRegisteringUser(String jsonUser) throws Exception {
-            mockMvc.perform(post("/api/auth/register")
+            performAsync(mockMvc, post("/api/auth/register")
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON)
                     .content(jsonUser)
@@ -84,17 +93,18 @@ class AuthentificationControllerTest {
 
         @Test
         void shouldReturnOkWhenLoginUser() throws Exception {
-            mockMvc.perform(post("/api/auth/login")
+            performAsync(mockMvc, post("/api/auth/login")
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON)
                     .content("{\"email\": \"test@test.com\", \"password\": \"test!31\"}"))
                     .andExpect(status().isOk())
-                    .andExpect(jsonPath("$.token").value("jwt"));
+                    .andExpect(jsonPath("$.token").value("jwt"))
+                    .andExpect(jsonPath("$.refresh_token").value("refresh"));
         }
 
         @Test
         void shouldReturnUnauthorizedWhenLoginUser() throws Exception {
-            mockMvc.perform(post("/api/auth/login")
+            performAsync(mockMvc, post("/api/auth/login")
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON)
                     .content("{}"))
@@ -120,6 +130,9 @@ class AuthentificationControllerTest {
         @MockBean
         private JwtService jwtService;
 
+        @MockBean
+        private TokenRevocationService tokenRevocationService;
+
         @MockBean
         private UserToAuthMeResponse converter;
 
@@ -155,6 +168,47 @@ class AuthentificationControllerTest {
                     .andExpect(jsonPath("$.email").value("mocked@test.com"));
         }
 
+        @Test
+        void shouldShowUserDetailsFromTokenClaims() throws Exception {
+            User user1 = User.builder()
+                    .id(1)
+                    .name("claims")
+                    .email("claims@test.com")
+                    .createdAt(Instant.parse("2023-01-01T00:00:00Z"))
+                    .updatedAt(Instant.parse("2023-02-01T00:00:00Z"))
+                    .build();
+
+            Mockito.when(converter.convert(user1))
+                    .thenReturn(AuthMeResponse.builder()
+                            .email("claims@test.com")
+                            .build());
+
+            mockMvc.perform(get("/api/auth/me")
+                    .with(user(user1))
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.email").value("claims@test.com"));
+
+            Mockito.verify(authentificationService, Mockito.never()).authUser(Mockito.anyString());
+        }
+
+        @Test
+        @WithMockUser
+        void shouldShowEmailAvailability() throws Exception {
+            Mockito.when(authentificationService.isEmailAvailable("free@test.com")).thenReturn(true);
+
+            mockMvc.perform(get("/api/auth/email-available")
+                    .param("email", "free@test.com")
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.available").value(true));
+
+            mockMvc.perform(get("/api/auth/email-available")
+                    .param("email", "free")
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest());
+        }
+
         @Test
         @WithMockUser(username = "none@test.com")
         void shouldNotShowUserDetails() throws Exception {
@@ -0,0 +1,146 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.entity.Message;
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Query plans of messages pages : SQL run by MessageRepository is captured, then explained by H2
+ * with the same parameters.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.openclassrooms.api.repository.MessageRepositoryQueryPlanTest$LastStatement"
+})
+class MessageRepositoryQueryPlanTest {
+
+    private static final int PAGE_SIZE = 3;
+    private static final Instant AFTER = Instant.parse("2023-01-01T00:00:00Z");
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private User owner;
+
+    private Rental rental;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+
+        for (int i = 0; i < 5; i++) {
+            rental = rentalRepository.saveAndFlush(
+                    Rental.builder()
+                            .name("rental " + i)
+                            .surface(BigDecimal.valueOf(20L + i))
+                            .price(BigDecimal.valueOf(100L + i))
+                            .picture("http://localhost/images/rental" + i + ".jpg")
+                            .description("description " + i)
+                            .owner(owner)
+                            .build()
+            );
+            for (int j = 0; j < 10; j++) {
+                messageRepository.save(Message.builder().message("message " + j).user(owner).rental(rental).build());
+            }
+        }
+    }
+
+    @AfterEach
+    void teardown() {
+        messageRepository.deleteAll();
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void nextRentalMessagesPageShouldUseRentalIndex() throws SQLException {
+        messageRepository.findRentalPageAfter(rental.getId(), AFTER, 10, PageRequest.ofSize(PAGE_SIZE));
+
+        String plan = explain(LastStatement.sql, rental.getId(), Timestamp.from(AFTER), Timestamp.from(AFTER), 10);
+
+        Assertions.assertThat(plan).contains("IDX_MESSAGES_RENTAL_CREATED_AT_ID");
+    }
+
+    @Test
+    void nextInboxPageShouldUseOwnerAndRentalIndexes() throws SQLException {
+        messageRepository.findInboxPageAfter(owner.getId(), AFTER, 10, PageRequest.ofSize(PAGE_SIZE));
+
+        String plan = explain(LastStatement.sql, owner.getId(), Timestamp.from(AFTER), Timestamp.from(AFTER), 10);
+
+        // Rentals are found by an index on owner_id : H2 picks its foreign key index, MySQL reuses the composite one
+        Assertions.assertThat(plan)
+                .containsPattern("/\\* PUBLIC\\.\\w+: OWNER_ID = \\?1 \\*/")
+                .contains("IDX_MESSAGES_RENTAL_CREATED_AT_ID");
+    }
+
+    /**
+     * Query plan of a statement, its remaining parameters (row limit) bound to page size
+     *
+     * @param sql SQL statement
+     * @param values leading parameters values
+     * @return String
+     * @throws SQLException SQLException
+     */
+    private String explain(String sql, Object... values) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                if (i <= values.length) {
+                    statement.setObject(i, values[i - 1]);
+                } else {
+                    statement.setInt(i, PAGE_SIZE + 1);
+                }
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        }
+    }
+
+    /**
+     * Keep last SQL statement prepared by Hibernate
+     */
+    public static class LastStatement implements StatementInspector {
+        static volatile String sql;
+
+        @Override
+        public String inspect(String sql) {
+            LastStatement.sql = sql;
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.openclassrooms.api.repository;
+
+import com.openclassrooms.api.model.entity.Rental;
+import com.openclassrooms.api.model.entity.User;
+import com.openclassrooms.api.model.request.rentals.RentalFilter;
+import com.openclassrooms.api.model.request.rentals.RentalSort;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Query plans of filtered rentals pages : SQL run by findPage is captured, then explained by H2.
+ * Values are inlined in SQL, so the plan shows the index conditions.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.openclassrooms.api.repository.RentalRepositoryQueryPlanTest$LastStatement",
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline"
+})
+class RentalRepositoryQueryPlanTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private User owner;
+
+    @BeforeEach
+    void init() {
+        owner = userRepository.saveAndFlush(
+                User.builder()
+                        .email("owner@test.com")
+                        .name("owner TEST")
+                        .password("password")
+                        .build()
+        );
+
+        for (int i = 0; i < 50; i++) {
+            rentalRepository.saveAndFlush(
+                    Rental.builder()
+                            .name("rental " + i)
+                            .surface(BigDecimal.valueOf(20L + i))
+                            .price(BigDecimal.valueOf(100L + i))
+                            .picture("http://localhost/images/rental" + i + ".jpg")
+                            .description("description " + i)
+                            .owner(owner)
+                            .build()
+            );
+        }
+    }
+
+    @AfterEach
+    void teardown() {
+        rentalRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void priceRangeSortedByPriceShouldUsePriceIndex() throws SQLException {
+        rentalRepository.findPage(
+                new RentalFilter(BigDecimal.valueOf(110), BigDecimal.valueOf(130), null, null, null),
+                RentalSort.parse("-price"),
+                List.of(new BigDecimal("125.00"), 26),
+                PAGE_SIZE
+        );
+
+        Assertions.assertThat(explain(LastStatement.sql)).contains("IDX_RENTALS_PRICE_ID");
+    }
+
+    @Test
+    void surfaceRangeSortedBySurfaceShouldUseSurfaceIndex() throws SQLException {
+        rentalRepository.findPage(
+                new RentalFilter(null, null, BigDecimal.valueOf(30), BigDecimal.valueOf(40), null),
+                RentalSort.parse("surface,price"),
+                null,
+                PAGE_SIZE
+        );
+
+        Assertions.assertThat(explain(LastStatement.sql)).contains("IDX_RENTALS_SURFACE_ID");
+    }
+
+    @Test
+    void nextOwnerRentalsPageShouldUseOwnerIndex() throws SQLException {
+        rentalRepository.findPage(
+                new RentalFilter(null, null, null, null, owner.getId()),
+                RentalSort.DEFAULT,
+                List.of(Instant.parse("2023-01-01T00:00:00Z"), 10),
+                PAGE_SIZE
+        );
+
+        Assertions.assertThat(explain(LastStatement.sql)).contains("IDX_RENTALS_OWNER_CREATED_AT_ID");
+    }
+
+    /**
+     * Query plan of a statement, its remaining parameters (row limit) bound to page size
+     *
+     * @param sql SQL statement
+     * @return String
+     * @throws SQLException SQLException
+     */
+    private String explain(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setInt(i, PAGE_SIZE + 1);
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        }
+    }
+
+    /**
+     * Keep last SQL statement prepared by Hibernate
+     */
+    public static class LastStatement implements StatementInspector {
+        static volatile String sql;
+
+        @Override
+        public String inspect(String sql) {
+            LastStatement.sql = sql;
+            return sql;
+        }
+    }
+}